@@ -0,0 +1,11 @@
+public enum Action
+{
+    ROTATE_LEFT,
+    ROTATE_RIGHT,
+    LEFT,
+    RIGHT,
+    SOFT_DROP,
+    HARD_DROP,
+    HOLD,
+    PAUSE
+};
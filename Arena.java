@@ -0,0 +1,243 @@
+import java.util.Arrays;
+
+/**
+ * Storage for search nodes: a board packed as 22 row masks (see
+ * Heuristic) and a few numbers each, in parallel primitive arrays
+ * rather than an object per node. It grows as needed and is cleared
+ * between uses, so a search reusing it allocates next to nothing.
+ */
+public class Arena
+{
+    /*** STATIC DATA ***/
+
+    public static final int ROWS = Heuristic.ROWS;
+
+    /*** INSTANCE VARIABLES ***/
+
+    private int[] rows;
+    private long[] hash;
+    private double[] score;
+    private int[] lines;
+    private int[] root;
+    private byte[] hold;
+    private byte[] next;
+    private int size = 0;
+
+    /*** METHODS ***/
+
+    /**
+     * Create new Arena.
+     * @param capacity number of nodes to make room for up front
+     */
+    public Arena(int capacity)
+    {
+        capacity = Math.max(1, capacity);
+        this.rows = new int[capacity * ROWS];
+        this.hash = new long[capacity];
+        this.score = new double[capacity];
+        this.lines = new int[capacity];
+        this.root = new int[capacity];
+        this.hold = new byte[capacity];
+        this.next = new byte[capacity];
+    }
+
+    /**
+     * Remove every node.
+     */
+    public void clear()
+    {
+        this.size = 0;
+    }
+
+    /**
+     * Add a node, its fields are left as they were.
+     * @return index of the new node
+     */
+    public int add()
+    {
+        if (this.size == this.score.length) {
+            int n = this.size * 2;
+            this.rows = Arrays.copyOf(this.rows, n * ROWS);
+            this.hash = Arrays.copyOf(this.hash, n);
+            this.score = Arrays.copyOf(this.score, n);
+            this.lines = Arrays.copyOf(this.lines, n);
+            this.root = Arrays.copyOf(this.root, n);
+            this.hold = Arrays.copyOf(this.hold, n);
+            this.next = Arrays.copyOf(this.next, n);
+        }
+        return this.size++;
+    }
+
+    /**
+     * Add a copy of a node of another arena.
+     * @param a arena
+     * @param i index of the node
+     * @return index of the new node
+     */
+    public int copy(Arena a, int i)
+    {
+        int j = add();
+        System.arraycopy(a.rows, i * ROWS, this.rows, j * ROWS, ROWS);
+        this.hash[j] = a.hash[i];
+        this.score[j] = a.score[i];
+        this.lines[j] = a.lines[i];
+        this.root[j] = a.root[i];
+        this.hold[j] = a.hold[i];
+        this.next[j] = a.next[i];
+        return j;
+    }
+
+    /**
+     * Remove the last node added.
+     */
+    public void remove()
+    {
+        this.size--;
+    }
+
+    /**
+     * Score nodes all at once (see Heuristic.evaluate()).
+     * @param h heuristic
+     * @param from index of the first node to score
+     * @param lines true to count the lines cleared getting to
+     *        each node, false to score their boards alone
+     */
+    public void evaluate(Heuristic h, int from, boolean lines)
+    {
+        h.evaluate(this.rows, lines ? this.lines : null, this.score, from, this.size);
+    }
+
+    /**
+     * @return number of nodes
+     */
+    public int size()
+    {
+        return this.size;
+    }
+
+    /**
+     * @return the packed boards of all nodes, which
+     *         are replaced whenever the arena grows
+     */
+    public int[] rows()
+    {
+        return this.rows;
+    }
+
+    /**
+     * @param i index of a node
+     * @return index of its bottom row in rows()
+     */
+    public int base(int i)
+    {
+        return i * ROWS;
+    }
+
+    /**
+     * @param i index of a node
+     * @return hash of its board, see Grid.hash()
+     */
+    public long getHash(int i)
+    {
+        return this.hash[i];
+    }
+
+    /**
+     * @param i index of a node
+     * @param h hash of its board
+     */
+    public void setHash(int i, long h)
+    {
+        this.hash[i] = h;
+    }
+
+    /**
+     * @param i index of a node
+     * @return its score, see Heuristic
+     */
+    public double getScore(int i)
+    {
+        return this.score[i];
+    }
+
+    /**
+     * @param i index of a node
+     * @param s score
+     */
+    public void setScore(int i, double s)
+    {
+        this.score[i] = s;
+    }
+
+    /**
+     * @param i index of a node
+     * @return lines cleared getting to it
+     */
+    public int getLines(int i)
+    {
+        return this.lines[i];
+    }
+
+    /**
+     * @param i index of a node
+     * @param n lines cleared getting to it
+     */
+    public void setLines(int i, int n)
+    {
+        this.lines[i] = n;
+    }
+
+    /**
+     * @param i index of a node
+     * @return the first move leading to it, up to the user
+     */
+    public int getRoot(int i)
+    {
+        return this.root[i];
+    }
+
+    /**
+     * @param i index of a node
+     * @param r the first move leading to it
+     */
+    public void setRoot(int i, int r)
+    {
+        this.root[i] = r;
+    }
+
+    /**
+     * @param i index of a node
+     * @return the held kind
+     */
+    public Kind getHold(int i)
+    {
+        return Randomizer.KINDS[this.hold[i]];
+    }
+
+    /**
+     * @param i index of a node
+     * @param k the held kind
+     */
+    public void setHold(int i, Kind k)
+    {
+        this.hold[i] = (byte) k.ordinal();
+    }
+
+    /**
+     * @param i index of a node
+     * @return position of its falling piece in the queue
+     */
+    public int getNext(int i)
+    {
+        return this.next[i];
+    }
+
+    /**
+     * @param i index of a node
+     * @param n position of its falling piece in the queue
+     */
+    public void setNext(int i, int n)
+    {
+        this.next[i] = (byte) n;
+    }
+}
@@ -0,0 +1,97 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/**
+ * Pre-rendered block sprites, one solid and one ghost image per
+ * kind, for a given block size. Drawing a block is then a plain
+ * image copy instead of rasterizing the bevel of a 3D rectangle.
+ */
+public class Atlas
+{
+    /*** STATIC DATA ***/
+
+    // ghost alpha, see Piece.draw()
+    private static final int GHOST = 0x4B;
+
+    private static final Atlas[] CACHE = new Atlas[64];
+
+    /*** INSTANCE VARIABLES ***/
+
+    private final Image[] solid = new Image[8];
+    private final Image[] ghost = new Image[8];
+
+    /*** METHODS ***/
+
+    /**
+     * Get the atlas for a block size, building it on first use.
+     * @param s block size
+     * @return shared atlas
+     */
+    public static Atlas get(int s)
+    {
+        if (s >= CACHE.length)
+            return new Atlas(s);
+        if (CACHE[s] == null)
+            CACHE[s] = new Atlas(s);
+        return CACHE[s];
+    }
+
+    /**
+     * Create new Atlas.
+     * @param s block size
+     */
+    private Atlas(int s)
+    {
+        for (int i = 0; i < 8; i++)
+        {
+            Color c = Piece.COLORS[i];
+            Color t = new Color(c.getRed(), c.getGreen(), c.getBlue(), GHOST);
+            this.solid[i] = render(c, s, Transparency.OPAQUE);
+            this.ghost[i] = render(t, s, Transparency.TRANSLUCENT);
+        }
+    }
+
+    /**
+     * Rasterize a single block.
+     * @param c color
+     * @param s block size
+     * @param t transparency of the image
+     * @return new image
+     */
+    private static Image render(Color c, int s, int t)
+    {
+        BufferedImage bi;
+        if (GraphicsEnvironment.isHeadless()) {
+            bi = new BufferedImage(s, s, BufferedImage.TYPE_INT_ARGB);
+        } else {
+            bi = GraphicsEnvironment.getLocalGraphicsEnvironment()
+                .getDefaultScreenDevice()
+                .getDefaultConfiguration()
+                .createCompatibleImage(s, s, t);
+        }
+
+        Graphics g = bi.getGraphics();
+        g.setColor(c);
+        g.fill3DRect(0, 0, s, s, true);
+        g.dispose();
+        return bi;
+    }
+
+    /**
+     * @param i kind ordinal
+     * @return solid block sprite
+     */
+    public Image block(int i)
+    {
+        return this.solid[i];
+    }
+
+    /**
+     * @param i kind ordinal
+     * @return translucent ghost block sprite
+     */
+    public Image ghost(int i)
+    {
+        return this.ghost[i];
+    }
+}
@@ -0,0 +1,71 @@
+import java.nio.ByteBuffer;
+
+/**
+ * Deals pieces from a shuffled bag holding a number of copies
+ * of each kind, reshuffling once it runs out (see guideline).
+ */
+public class BagRandomizer
+    extends Randomizer
+{
+    /*** INSTANCE VARIABLES ***/
+
+    private final Kind[] bag;
+    private int index;
+
+    /*** METHODS ***/
+
+    /**
+     * Create new BagRandomizer.
+     * @param copies of each kind per bag, 1 for a 7-bag
+     * @param seed
+     */
+    public BagRandomizer(int copies, long seed)
+    {
+        super(seed);
+        this.bag = new Kind[7 * copies];
+        for (int i = 0; i < this.bag.length; i++)
+            this.bag[i] = KINDS[1 + i % 7];
+        this.index = this.bag.length;
+    }
+
+    @Override
+    public Kind next()
+    {
+        if (this.index == this.bag.length) {
+            // Fisher-Yates
+            for (int i = this.bag.length - 1; i > 0; i--)
+            {
+                int j = roll(i + 1);
+                Kind k = this.bag[i];
+                this.bag[i] = this.bag[j];
+                this.bag[j] = k;
+            }
+            this.index = 0;
+        }
+        return this.bag[this.index++];
+    }
+
+    @Override
+    protected int type()
+    {
+        return BAG;
+    }
+
+    @Override
+    protected void save(ByteBuffer b)
+    {
+        // copies first, Randomizer.read() needs it to create the bag
+        b.put((byte) (this.bag.length / 7));
+        b.put((byte) this.index);
+        for (Kind k : this.bag)
+            b.put((byte) k.ordinal());
+    }
+
+    @Override
+    protected void load(ByteBuffer b)
+    {
+        this.index = b.get();
+        for (int i = 0; i < this.bag.length; i++)
+            this.bag[i] = KINDS[b.get()];
+    }
+}
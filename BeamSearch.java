@@ -0,0 +1,487 @@
+import java.util.Arrays;
+
+/**
+ * Plans several pieces ahead, using the preview and hold. Starting from
+ * the current board, every placement of every piece which can be played
+ * next (the falling one, or whichever comes out of hold) is scored, the
+ * best few are kept, and the search goes on from those w/ the next piece
+ * until the preview runs out or time is up. The first move on the way to
+ * the best board found is then played.
+ *
+ * Boards are kept in arenas (see Arena), reused from one search to the
+ * next, so planning a move allocates next to nothing but its inputs.
+ * Different orders of moves often lead to the same position, which are
+ * told apart by their hash, so only the one which cleared the most lines
+ * is kept and the beam isn't filled up w/ copies of one. Boards are
+ * scored alone, the lines being added on after, and their scores are
+ * remembered by position (see TranspositionTable), so one reached again
+ * by the next search isn't scored again.
+ * A search keeps scratch space, so each thread needs its own.
+ */
+public class BeamSearch
+    implements Policy
+{
+    /*** STATIC DATA ***/
+
+    // boards kept at each depth, and time allowed per move
+    public static final int WIDTH = 64;
+    public static final long BUDGET = 20000000L;
+
+    // log2 of the number of boards remembered
+    private static final int TABLE = 16;
+
+    /*** INSTANCE VARIABLES ***/
+
+    private final Heuristic heuristic;
+    private final int width;
+    private final long budget;
+    private final Bot bot;
+
+    // scratch grid to search boards of the arena on, w/ a piece of
+    // each kind on it and where those spawn
+    private final Grid grid = new Grid();
+    private final Piece[] pieces = new Piece[8];
+
+    private Arena beam;
+    private Arena children;
+    // children whose score wasn't in the table, gathered to be scored
+    private Arena scratch;
+    private int[] pending = new int[64];
+    private int misses = 0;
+    private final int[] heap;
+    private final TranspositionTable table = new TranspositionTable(TABLE);
+    // pieces placed before the search began
+    private long placed = 0;
+
+    // index of each child added at the current depth by its key, w/
+    // open addressing, slots stamped at older depths count as free
+    private long[] seenKeys = new long[1 << 12];
+    private int[] seenNodes = new int[1 << 12];
+    private int[] seenStamps = new int[1 << 12];
+    private int stamp = 0;
+    private int seen = 0;
+
+    private final Kind[] queue = new Kind[GameEngine.MAX_PREVIEW + 1];
+    private int length = 0;
+
+    // first moves, packed by root()
+    private int[] roots = new int[64];
+    private int count = 0;
+    private int depth = 0;
+
+    /*** METHODS ***/
+
+    /**
+     * Create new BeamSearch.
+     * @param h heuristic to score boards w/
+     * @param width number of boards kept at each depth
+     * @param budget time allowed per move in nanoseconds, at least
+     *        the first piece is searched regardless
+     */
+    public BeamSearch(Heuristic h, int width, long budget)
+    {
+        this.heuristic = h;
+        this.width = Math.max(1, width);
+        this.budget = budget;
+        this.bot = new Bot(h, null); // only searches, see Bot.search()
+        this.beam = new Arena(this.width);
+        this.children = new Arena(this.width * 64);
+        this.scratch = new Arena(this.width * 64);
+        this.heap = new int[this.width];
+
+        for (int i = 1; i < 8; i++)
+            this.pieces[i] = new Piece(Kind.values()[i], this.grid);
+    }
+
+    /**
+     * Create new BeamSearch w/ the default heuristic, width and budget.
+     */
+    public BeamSearch()
+    {
+        this(Heuristic.DEFAULT, WIDTH, BUDGET);
+    }
+
+    @Override
+    public Action[] plan(GameEngine e)
+    {
+        if (e.isGameOver() || e.isPaused())
+            return null;
+
+        long deadline = System.nanoTime() + this.budget;
+        this.placed = e.getMetrics().getPieces();
+        this.table.age();
+        this.length = 0;
+        this.queue[this.length++] = e.getPiece().getKind();
+        for (int i = 0; i < e.getPreviewLength(); i++)
+            this.queue[this.length++] = e.getPreview(i);
+
+        // the current board, as it is
+        this.beam.clear();
+        this.count = 0;
+        int b = this.beam.add();
+        int[] rows = this.beam.rows();
+        for (int y = 0; y < Arena.ROWS; y++)
+            rows[this.beam.base(b) + y] = e.getGrid().row(y);
+        this.beam.setHash(b, e.getGrid().getHash());
+        this.beam.setScore(b, 0);
+        this.beam.setLines(b, 0);
+        this.beam.setRoot(b, -1);
+        this.beam.setHold(b, e.getHold());
+        this.beam.setNext(b, 0);
+
+        for (this.depth = 0; this.depth < this.length; )
+        {
+            this.children.clear();
+            this.misses = 0;
+            restamp();
+            for (int i = 0; i < this.beam.size(); i++)
+                expand(e, i, this.depth == 0);
+            if (this.children.size() == 0)
+                break;
+
+            score();
+            select();
+            this.depth++;
+            if (System.nanoTime() > deadline)
+                break;
+        }
+        if (this.count == 0)
+            return null;
+
+        int best = 0;
+        for (int i = 1; i < this.beam.size(); i++)
+            if (this.beam.getScore(i) > this.beam.getScore(best))
+                best = i;
+        return actions(e, this.beam.getRoot(best));
+    }
+
+    /**
+     * Add the children of a board, for the piece up next
+     * and for the one swapped in from hold.
+     * @param e game being planned for
+     * @param i index of the board in the beam
+     * @param first true at the root, where the falling
+     *        piece may have moved and hold may be used up
+     */
+    private void expand(GameEngine e, int i, boolean first)
+    {
+        int n = this.beam.getNext(i);
+        if (n >= this.length)
+            return;
+
+        Kind k = this.queue[n];
+        Kind h = this.beam.getHold(i);
+        place(e, i, k, h, n + 1, false, first);
+
+        if (first && e.isHolding())
+            return;
+        if (h.equals(Kind.NONE)) {
+            if (n + 1 < this.length)
+                place(e, i, this.queue[n + 1], k, n + 2, true, first);
+        } else if (!h.equals(k)) {
+            place(e, i, h, k, n + 1, true, first);
+        }
+    }
+
+    /**
+     * Add a child for every placement of a piece on a board.
+     * @param e game being planned for
+     * @param i index of the board in the beam
+     * @param k kind of piece to place
+     * @param hold held kind afterwards
+     * @param next position of the piece after it in the queue
+     * @param held true if hold was used
+     * @param first true at the root
+     */
+    private void place(GameEngine e, int i, Kind k, Kind hold,
+            int next, boolean held, boolean first)
+    {
+        this.grid.load(this.beam.rows(), this.beam.base(i));
+        Piece p = this.pieces[k.ordinal()];
+        if (first && !held) {
+            Piece f = e.getPiece();
+            p.setPosition(f.getX(), f.getY(), f.getState());
+        } else {
+            // as GameEngine.next() does, block-out ends the line
+            p.reset();
+            if (p.collides())
+                return;
+            p.move(Direction.DOWN);
+        }
+
+        int n = this.bot.search(this.grid, p);
+        for (int r = 0; r < n; r++)
+        {
+            this.bot.position(r, p);
+            if (p.getBottom() > 19)
+                continue; // lock-out
+
+            int c = this.children.add();
+            int[] src = this.beam.rows();
+            int[] dst = this.children.rows();
+            int from = this.beam.base(i);
+            int to = this.children.base(c);
+            for (int y = 0; y < Arena.ROWS; y++)
+                dst[to + y] = src[from + y] | p.row(y);
+
+            int cleared = Heuristic.clear(dst, to);
+            int lines = this.beam.getLines(i) + cleared;
+
+            // clearing lines moves rows, otherwise add the piece
+            long hash = this.beam.getHash(i);
+            if (cleared > 0) {
+                hash = Grid.hash(dst, to);
+            } else {
+                int top = Math.min(p.getBottom() + 4, Arena.ROWS);
+                for (int y = p.getBottom(); y < top; y++)
+                    hash ^= Grid.hash(y, p.row(y));
+            }
+
+            this.children.setHash(c, hash);
+            this.children.setHold(c, hold);
+            this.children.setNext(c, next);
+            long key = key(this.children, c);
+
+            // already added this depth, another way: only the
+            // lines cleared can differ, so keep the better one
+            int s = slot(key);
+            if (this.seenStamps[s] == this.stamp) {
+                this.children.remove();
+                int d = this.seenNodes[s];
+                double w = this.heuristic.getLines();
+                if (w * lines > w * this.children.getLines(d)) {
+                    this.children.setLines(d, lines);
+                    this.children.setRoot(d, first ? root(p, held) : this.beam.getRoot(i));
+                }
+                continue;
+            }
+
+            this.children.setLines(c, lines);
+            this.children.setRoot(c, first ? root(p, held) : this.beam.getRoot(i));
+
+            // reached by an earlier search, its board needn't be scored
+            int t = this.table.probe(key);
+            if (t >= 0) {
+                this.children.setScore(c, this.table.value(t));
+            } else {
+                if (this.misses == this.pending.length)
+                    this.pending = Arrays.copyOf(this.pending, this.misses * 2);
+                this.pending[this.misses++] = c;
+            }
+            see(s, key, c);
+        }
+    }
+
+    /**
+     * @param a arena
+     * @param c index of a child in it
+     * @return key of its position in the table
+     */
+    private long key(Arena a, int c)
+    {
+        int n = a.getNext(c);
+        Kind up = n < this.length ? this.queue[n] : Kind.NONE;
+        return TranspositionTable.key(a.getHash(c), up, a.getHold(c),
+                this.placed + this.depth + 1);
+    }
+
+    /**
+     * Forget the children of the last depth.
+     */
+    private void restamp()
+    {
+        this.seen = 0;
+        if (++this.stamp == Integer.MAX_VALUE) {
+            Arrays.fill(this.seenStamps, 0);
+            this.stamp = 1;
+        }
+    }
+
+    /**
+     * Find a child added at this depth.
+     * @param key see key()
+     * @return slot holding the key, or the free slot it would go in
+     */
+    private int slot(long key)
+    {
+        int m = this.seenKeys.length - 1;
+        int i = (int) TranspositionTable.mix(key) & m;
+        while (this.seenStamps[i] == this.stamp && this.seenKeys[i] != key)
+            i = (i + 1) & m;
+        return i;
+    }
+
+    /**
+     * Remember a child added at this depth, growing
+     * the slots to keep them at most half full.
+     * @param s free slot, see slot()
+     * @param key see key()
+     * @param c index of the child
+     */
+    private void see(int s, long key, int c)
+    {
+        this.seenKeys[s] = key;
+        this.seenNodes[s] = c;
+        this.seenStamps[s] = this.stamp;
+        if (++this.seen * 2 <= this.seenKeys.length)
+            return;
+
+        long[] keys = this.seenKeys;
+        int[] nodes = this.seenNodes;
+        int[] stamps = this.seenStamps;
+        this.seenKeys = new long[keys.length * 2];
+        this.seenNodes = new int[keys.length * 2];
+        this.seenStamps = new int[keys.length * 2];
+        for (int i = 0; i < keys.length; i++)
+        {
+            if (stamps[i] != this.stamp)
+                continue;
+            int j = slot(keys[i]);
+            this.seenKeys[j] = keys[i];
+            this.seenNodes[j] = nodes[i];
+            this.seenStamps[j] = this.stamp;
+        }
+    }
+
+    /**
+     * Remember a first move.
+     * @param p piece at rest
+     * @param held true if it came from hold
+     * @return index of the move
+     */
+    private int root(Piece p, boolean held)
+    {
+        if (this.count == this.roots.length)
+            this.roots = Arrays.copyOf(this.roots, this.count * 2);
+        this.roots[this.count] = (p.getX() + 8) | (p.getY() + 8) << 6
+            | p.getState() << 12 | (held ? 1 << 14 : 0);
+        return this.count++;
+    }
+
+    /**
+     * Score the boards of the children not in the table, gathered
+     * so they're scored all at once, and remember them. Then add
+     * the lines cleared getting to each child.
+     */
+    private void score()
+    {
+        Arena a = this.children;
+        this.scratch.clear();
+        for (int i = 0; i < this.misses; i++)
+            this.scratch.copy(a, this.pending[i]);
+        this.scratch.evaluate(this.heuristic, 0, false);
+        for (int i = 0; i < this.misses; i++)
+        {
+            int c = this.pending[i];
+            a.setScore(c, this.scratch.getScore(i));
+            this.table.put(key(a, c), a.getScore(c));
+        }
+
+        for (int c = 0; c < a.size(); c++)
+            a.setScore(c, a.getScore(c) + this.heuristic.getLines() * a.getLines(c));
+    }
+
+    /**
+     * Keep the best children as the new beam, found w/ a
+     * min-heap of the best so far, worst at the top.
+     */
+    private void select()
+    {
+        Arena a = this.children;
+        int n = 0;
+        for (int c = 0; c < a.size(); c++)
+        {
+            int i;
+            if (n < this.width) {
+                i = n++;
+                while (i > 0 && a.getScore(this.heap[(i - 1) / 2]) > a.getScore(c))
+                {
+                    this.heap[i] = this.heap[(i - 1) / 2];
+                    i = (i - 1) / 2;
+                }
+            } else if (a.getScore(c) > a.getScore(this.heap[0])) {
+                // sift down from the top, replacing the worst
+                i = 0;
+                while (2 * i + 1 < n)
+                {
+                    int j = 2 * i + 1;
+                    if (j + 1 < n && a.getScore(this.heap[j + 1]) < a.getScore(this.heap[j]))
+                        j++;
+                    if (a.getScore(this.heap[j]) >= a.getScore(c))
+                        break;
+                    this.heap[i] = this.heap[j];
+                    i = j;
+                }
+            } else {
+                continue;
+            }
+            this.heap[i] = c;
+        }
+
+        this.beam.clear();
+        for (int i = 0; i < n; i++)
+            this.beam.copy(a, this.heap[i]);
+    }
+
+    /**
+     * Find the inputs for a first move on the real grid.
+     * @param e game being planned for
+     * @param r index of the move
+     * @return inputs, ending in a HARD_DROP
+     */
+    private Action[] actions(GameEngine e, int r)
+    {
+        int m = this.roots[r];
+        int x = (m & 63) - 8;
+        int y = (m >> 6 & 63) - 8;
+        int s = m >> 12 & 3;
+        boolean held = (m & 1 << 14) != 0;
+
+        Grid g = e.getGrid();
+        Piece p;
+        if (held) {
+            Kind h = e.getHold();
+            p = new Piece(h.equals(Kind.NONE) ? this.queue[1] : h, g);
+            p.move(Direction.DOWN);
+        } else {
+            Piece f = e.getPiece();
+            p = new Piece(f.getKind(), g);
+            p.setPosition(f.getX(), f.getY(), f.getState());
+        }
+
+        // the same search as at the root, so the same positions
+        int n = this.bot.search(g, p);
+        for (int i = 0; i < n; i++)
+        {
+            this.bot.position(i, p);
+            if (p.getX() != x || p.getY() != y || p.getState() != s)
+                continue;
+
+            Action[] a = this.bot.path(i);
+            if (!held)
+                return a;
+
+            Action[] b = new Action[a.length + 1];
+            b[0] = Action.HOLD;
+            System.arraycopy(a, 0, b, 1, a.length);
+            return b;
+        }
+        return null;
+    }
+
+    /**
+     * @return cache of the boards searched, for its counters
+     */
+    public TranspositionTable getTable()
+    {
+        return this.table;
+    }
+
+    /**
+     * @return number of pieces the last plan looked ahead
+     */
+    public int getDepth()
+    {
+        return this.depth;
+    }
+}
@@ -0,0 +1,429 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Plays the game by searching every placement the falling piece can
+ * reach, and choosing the one leaving the best board (see Heuristic).
+ *
+ * Placements are found by a breadth-first search over positions, moving
+ * the piece w/ the same move() and rotate() as the player, so wall kicks
+ * are found as well, along w/ tucks and spins under overhangs after soft
+ * dropping. Dropping all the way down counts as a single move, so each
+ * placement is reached w/ about the fewest inputs. The resulting boards
+ * are then scored in parallel.
+ *
+ * A bot keeps scratch space for its search, so each thread needs its own.
+ */
+public class Bot
+    implements Policy
+{
+    /*** STATIC DATA ***/
+
+    // inputs tried from each position, the last standing in for
+    // dropping all the way, which takes that many soft drops
+    private static final Action[] MOVES = {
+        Action.LEFT, Action.RIGHT, Action.ROTATE_LEFT,
+        Action.ROTATE_RIGHT, Action.SOFT_DROP, Action.SOFT_DROP
+    };
+    private static final int DROP = 5;
+
+    // inputs tried by fewest(), each one key: the above, and auto
+    // shifting all the way to either side w/ a direction held down
+    private static final int SHIFTS = MOVES.length + 2;
+
+    // positions are indexed w/ the bounding box offset by this much,
+    // as it can stick out of the grid, 32 x 32 positions by 4 states
+    private static final int OFF = 4;
+    private static final int POSITIONS = 32 * 32 * 4;
+
+    // placements scored per task, see Evaluate
+    private static final int SPLIT = 8;
+
+    /*** INSTANCE VARIABLES ***/
+
+    private final Heuristic heuristic;
+    private final ForkJoinPool pool;
+
+    // search scratch space, 'seen' holds the stamp of the search
+    // which last reached a position, so it's never cleared
+    private final int[] seen = new int[POSITIONS];
+    private final int[] from = new int[POSITIONS];
+    private final byte[] how = new byte[POSITIONS];
+    private final int[] queue = new int[POSITIONS];
+    private final long[] keys = new long[POSITIONS];
+    private final int[] rest = new int[POSITIONS];
+    private final int[] depth = new int[POSITIONS];
+    private int stamp = 0;
+
+    // pieces moved around by the search, on this grid
+    private final Piece[] scratch = new Piece[8];
+    private Grid grid = null;
+
+    /*** METHODS ***/
+
+    /**
+     * Create new Bot.
+     * @param h heuristic to score boards w/
+     * @param pool pool to score boards on, null
+     *        to score them on the calling thread
+     */
+    public Bot(Heuristic h, ForkJoinPool pool)
+    {
+        this.heuristic = h;
+        this.pool = pool;
+    }
+
+    /**
+     * Create new Bot w/ the default heuristic, on the common pool.
+     */
+    public Bot()
+    {
+        this(Heuristic.DEFAULT, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param x
+     * @param y
+     * @param s
+     * @return index of a position
+     */
+    private static int index(int x, int y, int s)
+    {
+        return ((y + OFF) * 32 + (x + OFF)) * 4 + s;
+    }
+
+    /**
+     * Try an input on a piece.
+     * @param p
+     * @param m index into MOVES
+     * @return true if the piece moved
+     */
+    private static boolean apply(Piece p, int m)
+    {
+        switch (m)
+        {
+            case 0:
+                return p.move(Direction.LEFT);
+            case 1:
+                return p.move(Direction.RIGHT);
+            case 2:
+                return p.rotate(Direction.LEFT);
+            case 3:
+                return p.rotate(Direction.RIGHT);
+            case 4:
+                return p.move(Direction.DOWN);
+            case DROP:
+                return p.drop() > 0;
+            default:
+                Direction d = m == DROP + 1 ? Direction.LEFT : Direction.RIGHT;
+                boolean moved = false;
+                while (p.move(d))
+                    moved = true;
+                return moved;
+        }
+    }
+
+    /**
+     * Identify a resting place by the locations it covers, as
+     * different positions of symmetric pieces can cover the same.
+     * @param p piece at rest
+     * @return bottom row, and the masks of the four rows from there
+     */
+    private static long key(Piece p)
+    {
+        int y = p.getBottom();
+        long k = y;
+        for (int i = 0; i < 4; i++)
+            k |= (long) p.row(y + i) << (5 + 10 * i);
+        return k;
+    }
+
+    /**
+     * Get a scratch piece to search w/, reused while the grid is.
+     * @param k kind
+     * @param g grid
+     * @return piece
+     */
+    private Piece scratch(Kind k, Grid g)
+    {
+        if (this.grid != g) {
+            this.grid = g;
+            Arrays.fill(this.scratch, null);
+        }
+        int i = k.ordinal();
+        if (this.scratch[i] == null)
+            this.scratch[i] = new Piece(k, g);
+        return this.scratch[i];
+    }
+
+    /**
+     * Find every position a piece can come to rest at, which can
+     * then be looked at w/ position() and path() until the next search.
+     * @param g grid, left as it is
+     * @param piece falling piece, left where it is
+     * @return number of distinct resting positions found
+     */
+    public int search(Grid g, Piece piece)
+    {
+        Piece p = scratch(piece.getKind(), g);
+        int found = 0;
+
+        int start = index(piece.getX(), piece.getY(), piece.getState());
+        int head = 0;
+        int tail = 0;
+        this.stamp++;
+        this.seen[start] = this.stamp;
+        this.from[start] = -1;
+        this.queue[tail++] = start;
+
+        while (head < tail)
+        {
+            int i = this.queue[head++];
+            int s = i & 3;
+            int x = (i >> 2 & 31) - OFF;
+            int y = (i >> 7) - OFF;
+
+            for (int m = 0; m < MOVES.length; m++)
+            {
+                p.setPosition(x, y, s);
+                if (!apply(p, m))
+                    continue;
+
+                // kicks can climb above the field, far enough is enough
+                if (p.getY() + OFF >= 32)
+                    continue;
+
+                int j = index(p.getX(), p.getY(), p.getState());
+                if (this.seen[j] == this.stamp)
+                    continue;
+                this.seen[j] = this.stamp;
+                this.from[j] = i;
+                this.how[j] = (byte) m;
+                this.queue[tail++] = j;
+            }
+
+            // at rest, unless already covered by another position
+            p.setPosition(x, y, s);
+            if (p.move(Direction.DOWN))
+                continue;
+
+            long k = key(p);
+            boolean dup = false;
+            for (int n = 0; n < found && !dup; n++)
+                dup = this.keys[n] == k;
+            if (dup)
+                continue;
+            this.keys[found] = k;
+            this.rest[found++] = i;
+        }
+        return found;
+    }
+
+    /**
+     * Find the fewest keys which place a piece where another is, as a
+     * player would press them: a tap of a direction, rotation or soft
+     * drop, holding a direction down to shift all the way, or soft drop
+     * to drop all the way, each count as one, and a hard drop ends it.
+     * This uses the same scratch space as search(), which is then lost.
+     * @param g grid, left as it is
+     * @param piece falling piece, left where it is
+     * @param target piece at rest, the locations it covers are matched
+     * @return number of keys including the HARD_DROP, -1 if it can't
+     *         be placed there
+     */
+    public int fewest(Grid g, Piece piece, Piece target)
+    {
+        Piece p = scratch(piece.getKind(), g);
+        long goal = key(target);
+
+        int start = index(piece.getX(), piece.getY(), piece.getState());
+        int head = 0;
+        int tail = 0;
+        this.stamp++;
+        this.seen[start] = this.stamp;
+        this.depth[start] = 0;
+        this.queue[tail++] = start;
+
+        // breadth first, so positions come out w/ the fewest keys first
+        while (head < tail)
+        {
+            int i = this.queue[head++];
+            int s = i & 3;
+            int x = (i >> 2 & 31) - OFF;
+            int y = (i >> 7) - OFF;
+
+            // hard drop from here
+            p.setPosition(x, y, s);
+            p.drop();
+            if (key(p) == goal)
+                return this.depth[i] + 1;
+
+            for (int m = 0; m < SHIFTS; m++)
+            {
+                p.setPosition(x, y, s);
+                if (!apply(p, m))
+                    continue;
+                if (p.getY() + OFF >= 32)
+                    continue;
+
+                int j = index(p.getX(), p.getY(), p.getState());
+                if (this.seen[j] == this.stamp)
+                    continue;
+                this.seen[j] = this.stamp;
+                this.depth[j] = this.depth[i] + 1;
+                this.queue[tail++] = j;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Move a piece to a resting position found by the last search.
+     * @param i index, less than what search() returned
+     * @param p piece
+     */
+    public void position(int i, Piece p)
+    {
+        int j = this.rest[i];
+        p.setPosition((j >> 2 & 31) - OFF, (j >> 7) - OFF, j & 3);
+    }
+
+    /**
+     * Find every placement of a piece.
+     * @param g grid, left as it is
+     * @param piece falling piece, left where it is
+     * @return distinct placements, w/ the fewest inputs to each
+     */
+    public List<Placement> placements(Grid g, Piece piece)
+    {
+        int n = search(g, piece);
+        List<Placement> out = new ArrayList<>(n);
+        for (int i = 0; i < n; i++)
+        {
+            int j = this.rest[i];
+            out.add(new Placement((j >> 2 & 31) - OFF, (j >> 7) - OFF, j & 3, path(i)));
+        }
+        return out;
+    }
+
+    /**
+     * Walk back to the start of the last search.
+     * @param r index of a resting position, see search()
+     * @return inputs leading there, ending in a HARD_DROP, which
+     *         also takes the place of a final drop
+     */
+    public Action[] path(int r)
+    {
+        int i = this.rest[r];
+        if (this.from[i] >= 0 && this.how[i] == DROP)
+            i = this.from[i];
+
+        // drops take one soft drop per row
+        int n = 1;
+        for (int j = i; this.from[j] >= 0; j = this.from[j])
+            n += this.how[j] == DROP ? (this.from[j] >> 7) - (j >> 7) : 1;
+
+        Action[] a = new Action[n];
+        a[--n] = Action.HARD_DROP;
+        for (int j = i; this.from[j] >= 0; j = this.from[j])
+        {
+            int k = this.how[j] == DROP ? (this.from[j] >> 7) - (j >> 7) : 1;
+            while (k-- > 0)
+                a[--n] = MOVES[this.how[j]];
+        }
+        return a;
+    }
+
+    /**
+     * Score the board left by a placement.
+     * @param g grid before the placement
+     * @param k kind of piece
+     * @param pl placement
+     * @param rows scratch space for the board
+     */
+    private void evaluate(Grid g, Kind k, Placement pl, int[] rows)
+    {
+        Piece p = new Piece(k, g);
+        p.setPosition(pl.getX(), pl.getY(), pl.getState());
+        for (int y = 0; y < 22; y++)
+            rows[y] = g.row(y) | p.row(y);
+        int n = Heuristic.clear(rows, 0);
+        pl.setScore(this.heuristic.evaluate(rows, 0, n));
+    }
+
+    /**
+     * Scores a range of placements, splitting it up into tasks.
+     * Tasks are never serialized.
+     */
+    @SuppressWarnings("serial")
+    private class Evaluate
+        extends RecursiveAction
+    {
+        private final Grid grid;
+        private final Kind kind;
+        private final List<Placement> list;
+        private final int lo;
+        private final int hi;
+
+        Evaluate(Grid g, Kind k, List<Placement> l, int lo, int hi)
+        {
+            this.grid = g;
+            this.kind = k;
+            this.list = l;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (this.hi - this.lo > SPLIT) {
+                int mid = (this.lo + this.hi) >>> 1;
+                invokeAll(new Evaluate(this.grid, this.kind, this.list, this.lo, mid),
+                          new Evaluate(this.grid, this.kind, this.list, mid, this.hi));
+                return;
+            }
+
+            int[] rows = new int[22];
+            for (int i = this.lo; i < this.hi; i++)
+                evaluate(this.grid, this.kind, this.list.get(i), rows);
+        }
+    }
+
+    /**
+     * Find the best placement of a piece.
+     * @param g grid, left as it is
+     * @param piece falling piece, left where it is
+     * @return best placement, null if the piece can't move at all
+     */
+    public Placement best(Grid g, Piece piece)
+    {
+        List<Placement> list = placements(g, piece);
+        if (this.pool != null) {
+            this.pool.invoke(new Evaluate(g, piece.getKind(), list, 0, list.size()));
+        } else {
+            int[] rows = new int[22];
+            for (Placement pl : list)
+                evaluate(g, piece.getKind(), pl, rows);
+        }
+
+        Placement best = null;
+        for (Placement pl : list)
+            if (best == null || pl.getScore() > best.getScore())
+                best = pl;
+        return best;
+    }
+
+    @Override
+    public Action[] plan(GameEngine e)
+    {
+        if (e.isGameOver() || e.isPaused())
+            return null;
+
+        Placement pl = best(e.getGrid(), e.getPiece());
+        return pl == null ? null : pl.getActions();
+    }
+}
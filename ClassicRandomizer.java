@@ -0,0 +1,52 @@
+import java.nio.ByteBuffer;
+
+/**
+ * The classic (NES) randomizer: roll one of eight, and roll
+ * again among seven if that gave the previous kind or the dummy.
+ */
+public class ClassicRandomizer
+    extends Randomizer
+{
+    /*** INSTANCE VARIABLES ***/
+
+    private int last = 0;
+
+    /*** METHODS ***/
+
+    /**
+     * Create new ClassicRandomizer.
+     * @param seed
+     */
+    public ClassicRandomizer(long seed)
+    {
+        super(seed);
+    }
+
+    @Override
+    public Kind next()
+    {
+        int i = roll(8);
+        if (i == 0 || i == this.last)
+            i = 1 + roll(7);
+        this.last = i;
+        return KINDS[i];
+    }
+
+    @Override
+    protected int type()
+    {
+        return CLASSIC;
+    }
+
+    @Override
+    protected void save(ByteBuffer b)
+    {
+        b.put((byte) this.last);
+    }
+
+    @Override
+    protected void load(ByteBuffer b)
+    {
+        this.last = b.get();
+    }
+}
@@ -3,16 +3,54 @@ import java.awt.Graphics;
 public class Facade
     {
         public static final int SIZE = 31;
+        private static final Facade[] CACHE = new Facade[8];
         private Kind kind;
 
+        static
+        {
+            for (Kind k : Kind.values())
+                CACHE[k.ordinal()] = new Facade(k);
+        }
+
+        /**
+         * Get the shared facade of a kind.
+         * @param k
+         * @return facade
+         */
+        public static Facade get(Kind k)
+        {
+            return CACHE[k.ordinal()];
+        }
+
         public Facade(Kind k)
         {
             this.kind = k;
         }
 
-        public static void block(Graphics g, int x, int y, int s)
+        /**
+         * Draw a block from the sprite atlas.
+         * @param g graphics context
+         * @param i kind ordinal
+         * @param x horizontal offset
+         * @param y vertical offset
+         * @param s block size
+         */
+        public static void block(Graphics g, int i, int x, int y, int s)
+        {
+            g.drawImage(Atlas.get(s).block(i), x, y, null);
+        }
+
+        /**
+         * Draw a ghost block from the sprite atlas.
+         * @param g graphics context
+         * @param i kind ordinal
+         * @param x horizontal offset
+         * @param y vertical offset
+         * @param s block size
+         */
+        public static void ghost(Graphics g, int i, int x, int y, int s)
         {
-            g.fill3DRect(x, y, s, s, true);
+            g.drawImage(Atlas.get(s).ghost(i), x, y, null);
         }
 
         /**
@@ -25,12 +63,11 @@ public class Facade
         public void fill(Graphics g, int x, int y, int s)
         {
             int i = this.kind.ordinal();
-            g.setColor(Piece.COLORS[i]);
             for (int[] p : Piece.BLOCKS[i])
             {
                 int xx = p[0] * s + x + 1;
                 int yy = -p[1] * s + y + 1;
-                block(g, xx, yy, s-2);
+                block(g, i, xx, yy, s-2);
             }
         }
     };
\ No newline at end of file
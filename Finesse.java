@@ -0,0 +1,110 @@
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks whether pieces are placed w/ finesse, w/ no more keys than it
+ * takes at least to get them from where they spawn to where they went
+ * (see Bot.fewest()), where shifting to a wall is one key held down, so
+ * tapping there is a fault. Using hold costs one more.
+ *
+ * The engine only copies each placement in record(), and the search is
+ * done on a thread of its own, so neither input nor frames wait for it.
+ * The results are added to the game's metrics by collect(), on whichever
+ * thread owns the engine.
+ */
+public class Finesse
+{
+    /*** INSTANCE VARIABLES ***/
+
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "finesse");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // owned by the worker, the grid before a placement,
+    // w/ a piece of each kind to search w/ and one to match
+    private final Bot bot = new Bot(Heuristic.DEFAULT, null);
+    private final Grid grid = new Grid();
+    private final Piece[] spawns = new Piece[8];
+    private final Piece[] targets = new Piece[8];
+
+    // pieces checked since the last collect()
+    private final AtomicInteger good = new AtomicInteger();
+    private final AtomicInteger faults = new AtomicInteger();
+
+    /*** METHODS ***/
+
+    /**
+     * Create new Finesse.
+     */
+    public Finesse()
+    {
+        for (int i = 1; i < 8; i++)
+        {
+            this.spawns[i] = new Piece(Kind.values()[i], this.grid);
+            this.targets[i] = new Piece(Kind.values()[i], this.grid);
+        }
+    }
+
+    /**
+     * Queue a placement to be checked, see GameEngine.setFinesse().
+     * @param g grid, before the piece is placed
+     * @param p piece at rest
+     * @param keys keys pressed since it came out of the queue
+     * @param held true if hold was used in that time
+     */
+    public void record(Grid g, Piece p, int keys, boolean held)
+    {
+        Grid copy = new Grid();
+        copy.copy(g);
+        Kind k = p.getKind();
+        int x = p.getX();
+        int y = p.getY();
+        int s = p.getState();
+        this.worker.execute(() -> check(copy, k, x, y, s, keys, held));
+    }
+
+    /**
+     * Find the fewest keys for a placement and count it, on the worker.
+     * @param g grid before the placement
+     * @param k kind of piece
+     * @param x
+     * @param y
+     * @param s rotation state it was placed in
+     * @param keys keys pressed for it
+     * @param held true if hold was used
+     */
+    private void check(Grid g, Kind k, int x, int y, int s, int keys, boolean held)
+    {
+        this.grid.copy(g);
+        Piece t = this.targets[k.ordinal()];
+        t.setPosition(x, y, s);
+
+        // from where it spawns, as in GameEngine.next()
+        Piece p = this.spawns[k.ordinal()];
+        p.reset();
+        p.move(Direction.DOWN);
+        int fewest = this.bot.fewest(this.grid, p, t);
+        if (fewest < 0)
+            return;
+
+        if (keys <= fewest + (held ? 1 : 0))
+            this.good.incrementAndGet();
+        else
+            this.faults.incrementAndGet();
+    }
+
+    /**
+     * Count the pieces checked since the last call.
+     * @param m metrics to count them in
+     */
+    public void collect(Metrics m)
+    {
+        for (int n = this.good.getAndSet(0); n > 0; n--)
+            m.finesse(true);
+        for (int n = this.faults.getAndSet(0); n > 0; n--)
+            m.finesse(false);
+    }
+}
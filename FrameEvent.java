@@ -0,0 +1,40 @@
+import jdk.jfr.*;
+
+/**
+ * Flight recorder event for each frame presented, recorded w/
+ * e.g. java -XX:StartFlightRecording=filename=jetris.jfr
+ */
+@Name("jetris.Frame")
+@Label("Frame")
+@Category("Jetris")
+@Description("A frame drawn and presented by the render thread")
+@StackTrace(false)
+public class FrameEvent
+    extends Event
+{
+    /*** STATIC DATA ***/
+
+    // checked before creating events, so there's no garbage when off
+    public static final EventType TYPE = EventType.getEventType(FrameEvent.class);
+
+    /*** INSTANCE VARIABLES ***/
+
+    @Label("Render Time")
+    @Description("Drawing the snapshot and scaling it into the back buffer")
+    @Timespan(Timespan.NANOSECONDS)
+    public long render;
+
+    @Label("Present Time")
+    @Description("Flipping or blitting the back buffer to the screen")
+    @Timespan(Timespan.NANOSECONDS)
+    public long present;
+
+    @Label("Sleep Error")
+    @Description("How much later than the frame deadline the thread woke up")
+    @Timespan(Timespan.NANOSECONDS)
+    public long sleepError;
+
+    @Label("Retries")
+    @Description("Frames redrawn because the buffer contents were lost")
+    public int retries;
+}
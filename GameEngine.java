@@ -0,0 +1,772 @@
+import java.nio.ByteBuffer;
+
+/**
+ * The game rules, free of any windowing code.
+ *
+ * Time is measured in fixed ticks (TICK_RATE per second) and only advances
+ * when the owner calls step(), so the engine can be driven in real time by
+ * a front end or as fast as possible by a batch job. Given the same seed and
+ * the same sequence of calls, two engines play out identical games.
+ */
+public class GameEngine
+{
+    /*** STATIC DATA ***/
+
+    public static final int TICK_RATE = 60;
+    public static final int LOCK_DELAY = TICK_RATE / 2;
+    public static final int GRAVITY = TICK_RATE;
+
+    // lock delay resets allowed per piece, see guideline
+    public static final int MAX_RESETS = 15;
+
+    // default handling: delayed auto shift and auto repeat
+    // rate in ticks, and soft drop as a multiple of gravity
+    public static final int DAS = 10;
+    public static final int ARR = 2;
+    public static final int SDF = 20;
+
+    // default number of upcoming pieces shown
+    public static final int PREVIEW = 5;
+    // most upcoming pieces an engine can be asked to show
+    public static final int MAX_PREVIEW = 16;
+
+    // change flags, see changes()
+    public static final int DIRTY_HOLD = 1;
+    public static final int DIRTY_NEXT = 2;
+    public static final int DIRTY_STATS = 4;
+    public static final int DIRTY_ALL = ~0;
+
+    /** Most bytes taken by write(), see read(). */
+    public static final int BYTES = 1 + Grid.BYTES + 8 + 12 * 4 + 8
+        + PieceQueue.BYTES + Metrics.BYTES;
+
+    private static final byte VERSION = 2;
+    private static final Kind[] KINDS = Kind.values();
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    /*** INSTANCE VARIABLES ***/
+
+    private final PieceQueue queue;
+    private Grid grid = new Grid();
+    private Piece piece = null;
+    private Kind hold = Kind.NONE;
+
+    private int score = 0;
+    private int lines = 0;
+    private int level = 1;
+
+    private boolean paused = false;
+    private boolean gameover = false;
+    private boolean holding = false;
+
+    private int gravity = GRAVITY;
+    private long fall = GRAVITY;
+    private long lock = -1;
+    private int resets = 0;
+    private int lowest = 0;
+
+    private int das = DAS;
+    private int arr = ARR;
+    private int sdf = SDF;
+    private boolean left = false;
+    private boolean right = false;
+    private boolean soft = false;
+    private Direction charge = null;
+    private long shift = -1;
+    private long elapsed = 0;
+    private final Metrics metrics = new Metrics();
+    // keys pressed since the piece came out of the queue
+    private int presses = 0;
+    private Finesse finesse = null;
+    private int dirty = DIRTY_ALL;
+
+    /*** METHODS ***/
+
+    /**
+     * Create new GameEngine.
+     * @param r piece randomizer
+     * @param preview number of upcoming pieces, up to MAX_PREVIEW
+     */
+    public GameEngine(Randomizer r, int preview)
+    {
+        this.queue = new PieceQueue(r, Math.min(preview, MAX_PREVIEW));
+        next();
+    }
+
+    /**
+     * Create new GameEngine around a queue, w/o starting it.
+     * @param q piece queue
+     */
+    private GameEngine(PieceQueue q)
+    {
+        this.queue = q;
+    }
+
+    /**
+     * Create new GameEngine w/ a 7-bag randomizer.
+     * @param seed randomizer seed
+     */
+    public GameEngine(long seed)
+    {
+        this(new BagRandomizer(1, seed), PREVIEW);
+    }
+
+    /**
+     * Create new GameEngine w/ an arbitrary seed.
+     */
+    public GameEngine()
+    {
+        this(System.nanoTime());
+    }
+
+    /**
+     * Add to the player score, lines
+     * cleared, and adjust speed.
+     * @param n number of lines cleared
+     */
+    private void score(int n)
+    {
+        if (n <= 0)
+            return;
+
+        // variable level goal
+        this.metrics.lines(n);
+        this.lines += n;
+        if (this.lines >= 5 * this.level)
+            this.level++;
+
+        // speed up, see guideline
+        double s = Math.pow(
+                (0.8 - (this.level - 1) * 0.007),
+                (this.level - 1));
+        this.gravity = Math.max(1, (int) (s * TICK_RATE));
+
+        // add to score
+        this.score += 100 * n * this.level;
+        this.dirty |= DIRTY_STATS;
+    }
+
+    /**
+     * Generate a new piece.
+     */
+    private void next()
+    {
+        this.holding = false;
+        this.piece = new Piece(this.queue.next(), this.grid);
+
+        // test for block-out
+        if (this.piece.collides())
+            this.gameover = true;
+
+        // see guideline
+        this.piece.move(Direction.DOWN);
+
+        this.lock = -1;
+        this.fall = this.gravity;
+        this.resets = 0;
+        this.lowest = this.piece.getY();
+        this.dirty |= DIRTY_NEXT;
+    }
+
+    /**
+     * Hold current piece.
+     */
+    private void hold()
+    {
+        if (this.holding)
+            return;
+
+        if (!this.hold.equals(Kind.NONE))
+            this.queue.push(this.hold);
+
+        this.hold = this.piece.getKind();
+        this.dirty |= DIRTY_HOLD;
+        next();
+        this.holding = true;
+    }
+
+    /**
+     * Place the current piece and spawn the next one.
+     */
+    private void lock()
+    {
+        this.lock = -1;
+        placed();
+        this.gameover = this.piece.place();
+        this.metrics.piece();
+        if (!this.gameover) {
+            score(this.grid.clear());
+            next();
+        }
+    }
+
+    /**
+     * Hand the piece about to be placed over for a finesse check,
+     * and start counting keys for the next.
+     */
+    private void placed()
+    {
+        if (this.finesse != null)
+            this.finesse.record(this.grid, this.piece, this.presses, this.holding);
+        this.presses = 0;
+    }
+
+    /**
+     * Falling below the lowest row reached so far
+     * earns the piece a fresh set of lock resets.
+     */
+    private void fell()
+    {
+        if (this.piece.getY() < this.lowest) {
+            this.lowest = this.piece.getY();
+            this.resets = 0;
+        }
+    }
+
+    /**
+     * Lock delay resets on movement, a limited number of times.
+     */
+    private void moved()
+    {
+        if (this.lock >= 0 && this.resets < MAX_RESETS) {
+            this.lock = LOCK_DELAY;
+            this.resets++;
+        }
+    }
+
+    /**
+     * @return ticks between rows falling, sped up
+     *         while soft drop is held down
+     */
+    private int interval()
+    {
+        if (!this.soft)
+            return this.gravity;
+        if (this.sdf == 0)
+            return 1;
+        return Math.max(1, this.gravity / this.sdf);
+    }
+
+    /**
+     * Move the piece down by gravity, or by soft drop if held.
+     */
+    private void gravity()
+    {
+        this.fall = interval();
+
+        int d;
+        if (this.soft && this.sdf == 0)
+            d = this.piece.drop();
+        else
+            d = this.piece.move(Direction.DOWN) ? 1 : 0;
+
+        if (d > 0) {
+            this.lock = -1;
+            if (this.soft) {
+                // 1 pt. per block (soft) dropped
+                this.score += d;
+                this.dirty |= DIRTY_STATS;
+            }
+        } else if (this.lock < 0) {
+            this.lock = LOCK_DELAY;
+        }
+        fell();
+    }
+
+    /**
+     * Start charging auto shift in a direction.
+     * @param d
+     */
+    private void charge(Direction d)
+    {
+        this.charge = d;
+        this.shift = this.das;
+    }
+
+    /**
+     * Auto shift the piece once charged, all the way to
+     * the wall (or stack) if the repeat rate is zero.
+     */
+    private void autoshift()
+    {
+        boolean moved = false;
+        if (this.arr == 0) {
+            while (this.piece.move(this.charge))
+                moved = true;
+            this.shift = 1;
+        } else {
+            moved = this.piece.move(this.charge);
+            this.shift = this.arr;
+        }
+
+        if (moved)
+            moved();
+    }
+
+    /**
+     * Set the handling of held keys.
+     * @param das delayed auto shift, ticks a direction must be held
+     *        before the piece starts moving by itself
+     * @param arr auto repeat rate, ticks between moves after that,
+     *        0 to move all the way instantly
+     * @param sdf soft drop factor, how many times faster than gravity
+     *        the piece falls while soft drop is held, 0 for instantly
+     */
+    public void setHandling(int das, int arr, int sdf)
+    {
+        this.das = Math.max(0, das);
+        this.arr = Math.max(0, arr);
+        this.sdf = Math.max(0, sdf);
+    }
+
+    /**
+     * Pause or resume the game.
+     * @param p
+     */
+    public void pause(boolean p)
+    {
+        if (this.paused == p)
+            return;
+
+        this.paused = p;
+        if (p) {
+            // keys may be released while paused
+            this.lock = -1;
+            this.left = false;
+            this.right = false;
+            this.soft = false;
+            this.charge = null;
+            this.shift = -1;
+        } else {
+            this.fall = this.gravity;
+        }
+    }
+
+    /**
+     * Apply a player action.
+     * @param a
+     */
+    public void input(Action a)
+    {
+        if (this.gameover)
+            return;
+
+        if (a.equals(Action.PAUSE))
+            pause(!this.paused);
+
+        if (this.paused)
+            return;
+
+        if (!a.equals(Action.PAUSE)) {
+            this.metrics.input();
+            this.presses++;
+        }
+
+        boolean moved = false;
+        switch (a)
+        {
+            case ROTATE_LEFT:
+                moved = this.piece.rotate(Direction.LEFT);
+                break;
+
+            case ROTATE_RIGHT:
+                moved = this.piece.rotate(Direction.RIGHT);
+                break;
+
+            case LEFT:
+                moved = this.piece.move(Direction.LEFT);
+                break;
+
+            case RIGHT:
+                moved = this.piece.move(Direction.RIGHT);
+                break;
+
+            case SOFT_DROP:
+                this.fall = interval();
+                if (!this.piece.move(Direction.DOWN)) {
+                    if (this.lock < 0)
+                        this.lock = LOCK_DELAY;
+                } else {
+                    // 1 pt. per block (soft) dropped
+                    this.score += 1;
+                    this.dirty |= DIRTY_STATS;
+                    fell();
+                }
+                break;
+
+            case HARD_DROP:
+                // 2 pts. per block (hard) dropped
+                this.score += 2 * this.piece.drop();
+                this.dirty |= DIRTY_STATS;
+                placed();
+                this.gameover = this.piece.place();
+                this.metrics.piece();
+                score(this.grid.clear());
+                next();
+                break;
+
+            case HOLD:
+                hold();
+                break;
+
+            default:
+                break;
+        }
+
+        if (moved)
+            moved();
+    }
+
+    /**
+     * Press and hold down an action. Moving left or right, and
+     * soft dropping repeat by themselves until released, others
+     * are the same as input().
+     * @param a
+     */
+    public void press(Action a)
+    {
+        if (!this.gameover && !this.paused) {
+            switch (a)
+            {
+                case LEFT:
+                    this.left = true;
+                    charge(Direction.LEFT);
+                    break;
+
+                case RIGHT:
+                    this.right = true;
+                    charge(Direction.RIGHT);
+                    break;
+
+                case SOFT_DROP:
+                    this.soft = true;
+                    break;
+
+                default:
+                    break;
+            }
+        }
+        input(a);
+    }
+
+    /**
+     * Release a held action, see press().
+     * @param a
+     */
+    public void release(Action a)
+    {
+        switch (a)
+        {
+            // the opposite direction takes over if still held
+            case LEFT:
+                this.left = false;
+                if (this.right)
+                    charge(Direction.RIGHT);
+                else if (Direction.LEFT.equals(this.charge))
+                    this.charge = null;
+                break;
+
+            case RIGHT:
+                this.right = false;
+                if (this.left)
+                    charge(Direction.LEFT);
+                else if (Direction.RIGHT.equals(this.charge))
+                    this.charge = null;
+                break;
+
+            case SOFT_DROP:
+                this.soft = false;
+                break;
+
+            default:
+                break;
+        }
+
+        if (this.charge == null)
+            this.shift = -1;
+    }
+
+    /**
+     * Advance the game clock, applying gravity and lock delay.
+     * @param ticks number of ticks to advance by
+     */
+    public void step(long ticks)
+    {
+        while (ticks > 0 && !this.gameover && !this.paused)
+        {
+            // advance to the next timer expiry
+            long dt = Math.min(ticks, this.fall);
+            if (this.lock >= 0)
+                dt = Math.min(dt, this.lock);
+            if (this.shift >= 0)
+                dt = Math.min(dt, this.shift);
+
+            ticks -= dt;
+            this.elapsed += dt;
+            this.metrics.advance(this.elapsed);
+            this.fall -= dt;
+            if (this.lock >= 0)
+                this.lock -= dt;
+            if (this.shift >= 0)
+                this.shift -= dt;
+
+            if (this.shift == 0)
+                autoshift();
+
+            if (this.lock == 0)
+                lock();
+            else if (this.fall == 0)
+                gravity();
+        }
+    }
+
+    /**
+     * Apply a sequence of actions, then advance the game clock.
+     * @param actions actions to apply in order, may be null
+     * @param ticks number of ticks to advance by
+     */
+    public void step(Action[] actions, long ticks)
+    {
+        if (actions != null)
+            for (Action a : actions)
+                input(a);
+        step(ticks);
+    }
+
+    /**
+     * Write the complete game state in a fixed layout, which
+     * takes at most BYTES (less w/ a shorter preview).
+     * @param b buffer
+     */
+    public void write(ByteBuffer b)
+    {
+        b.put(VERSION);
+        this.grid.write(b);
+
+        b.put((byte) this.piece.getKind().ordinal());
+        b.put((byte) this.piece.getX());
+        b.put((byte) this.piece.getY());
+        b.put((byte) this.piece.getState());
+        b.put((byte) this.hold.ordinal());
+        b.put((byte) (this.charge == null ? -1 : this.charge.ordinal()));
+        b.put((byte) ((this.holding ? 1 : 0)
+                    | (this.paused ? 2 : 0)
+                    | (this.gameover ? 4 : 0)
+                    | (this.left ? 8 : 0)
+                    | (this.right ? 16 : 0)
+                    | (this.soft ? 32 : 0)));
+        b.put((byte) this.resets);
+
+        b.putInt(this.score);
+        b.putInt(this.lines);
+        b.putInt(this.level);
+        b.putInt(this.gravity);
+        b.putInt((int) this.fall);
+        b.putInt((int) this.lock);
+        b.putInt((int) this.shift);
+        b.putInt(this.lowest);
+        b.putInt(this.das);
+        b.putInt(this.arr);
+        b.putInt(this.sdf);
+        b.putInt(this.presses);
+        b.putLong(this.elapsed);
+
+        this.queue.write(b);
+        this.metrics.write(b);
+    }
+
+    /**
+     * Recreate a game written by write(), which plays on
+     * exactly as the original would have from that point.
+     * @param b buffer
+     * @return new engine
+     * @throws IllegalArgumentException if the state is of another version
+     */
+    public static GameEngine read(ByteBuffer b)
+    {
+        if (b.get() != VERSION)
+            throw new IllegalArgumentException("Unknown game state version");
+
+        Grid g = new Grid();
+        g.read(b);
+
+        Kind k = KINDS[b.get()];
+        int x = b.get();
+        int y = b.get();
+        int s = b.get();
+        Kind hold = KINDS[b.get()];
+        int charge = b.get();
+        int flags = b.get();
+        int resets = b.get();
+
+        int score = b.getInt();
+        int lines = b.getInt();
+        int level = b.getInt();
+        int gravity = b.getInt();
+        int fall = b.getInt();
+        int lock = b.getInt();
+        int shift = b.getInt();
+        int lowest = b.getInt();
+        int das = b.getInt();
+        int arr = b.getInt();
+        int sdf = b.getInt();
+        int presses = b.getInt();
+        long elapsed = b.getLong();
+
+        GameEngine e = new GameEngine(PieceQueue.read(b));
+        e.metrics.read(b);
+        e.grid = g;
+        e.piece = new Piece(k, g);
+        e.piece.setPosition(x, y, s);
+        e.hold = hold;
+        e.charge = charge < 0 ? null : DIRECTIONS[charge];
+        e.holding = (flags & 1) != 0;
+        e.paused = (flags & 2) != 0;
+        e.gameover = (flags & 4) != 0;
+        e.left = (flags & 8) != 0;
+        e.right = (flags & 16) != 0;
+        e.soft = (flags & 32) != 0;
+        e.resets = resets;
+        e.score = score;
+        e.lines = lines;
+        e.level = level;
+        e.gravity = gravity;
+        e.fall = fall;
+        e.lock = lock;
+        e.shift = shift;
+        e.lowest = lowest;
+        e.das = das;
+        e.arr = arr;
+        e.sdf = sdf;
+        e.presses = presses;
+        e.elapsed = elapsed;
+        return e;
+    }
+
+    /**
+     * Record each piece as it's placed, to be checked for finesse.
+     * @param f checker, null to stop
+     */
+    public void setFinesse(Finesse f)
+    {
+        this.finesse = f;
+    }
+
+    /**
+     * Collect the parts of the game state which changed since the
+     * last call, so a front end can skip redrawing the rest.
+     * @return DIRTY_* flags
+     */
+    public int changes()
+    {
+        int d = this.dirty;
+        this.dirty = 0;
+        return d;
+    }
+
+    /**
+     * @return the playfield
+     */
+    public Grid getGrid()
+    {
+        return this.grid;
+    }
+
+    /**
+     * @return the falling piece
+     */
+    public Piece getPiece()
+    {
+        return this.piece;
+    }
+
+    /**
+     * @return the held kind, NONE if empty
+     */
+    public Kind getHold()
+    {
+        return this.hold;
+    }
+
+    /**
+     * Peek into the queue.
+     * @param i index, 0 being the next piece
+     * @return upcoming kind
+     */
+    public Kind getPreview(int i)
+    {
+        return this.queue.peek(i);
+    }
+
+    /**
+     * @return number of upcoming pieces which can be peeked at
+     */
+    public int getPreviewLength()
+    {
+        return this.queue.getPreview();
+    }
+
+    /**
+     * @return the player score
+     */
+    public int getScore()
+    {
+        return this.score;
+    }
+
+    /**
+     * @return number of lines cleared
+     */
+    public int getLines()
+    {
+        return this.lines;
+    }
+
+    /**
+     * @return current level
+     */
+    public int getLevel()
+    {
+        return this.level;
+    }
+
+    /**
+     * @return ticks played, excluding pauses
+     */
+    public long getElapsed()
+    {
+        return this.elapsed;
+    }
+
+    /**
+     * @return pace of play
+     */
+    public Metrics getMetrics()
+    {
+        return this.metrics;
+    }
+
+    /**
+     * @return true if hold was used already for the falling piece
+     */
+    public boolean isHolding()
+    {
+        return this.holding;
+    }
+
+    /**
+     * @return true if paused
+     */
+    public boolean isPaused()
+    {
+        return this.paused;
+    }
+
+    /**
+     * @return true if the game is over
+     */
+    public boolean isGameOver()
+    {
+        return this.gameover;
+    }
+}
@@ -1,5 +1,5 @@
-import java.util.Arrays;
 import java.awt.*;
+import java.nio.ByteBuffer;
 
 public class Grid
 {
@@ -7,13 +7,87 @@ public class Grid
 
     private static final int[] LINES = new int[] { 0, 1, 3, 5, 8 };
 
+    /** Occupancy mask of a complete row. */
+    public static final int FULL = (1 << 10) - 1;
+
+    /** Bytes taken by write(). */
+    public static final int BYTES = 22 * 10 / 2;
+
+    // random key per location, the hash of a grid is the XOR of
+    // the keys of its occupied locations (Zobrist hashing)
+    private static final long[] ZOBRIST = new long[22 * 10];
+
+    static
+    {
+        // SplitMix64 w/ a fixed seed, so hashes are the same every run
+        long z = 0x4A4554524953L;
+        for (int i = 0; i < ZOBRIST.length; i++)
+        {
+            long k = (z += 0x9E3779B97F4A7C15L);
+            k = (k ^ (k >>> 30)) * 0xBF58476D1CE4E5B9L;
+            k = (k ^ (k >>> 27)) * 0x94D049BB133111EBL;
+            ZOBRIST[i] = k ^ (k >>> 31);
+        }
+    }
+
     /*** INSTANCE VARIABLES ***/
 
-    private int[][] grid = new int[22][10];
+    // bit 'x' of rows[y] is set if location (x, y) is occupied
     private int[] rows = new int[22];
+    // kind ordinals, row-major, only used for drawing
+    private byte[] kinds = new byte[22 * 10];
+    // surface height of each column, i.e. highest block + 1
+    private int[] heights = new int[10];
+    // bit 'x' of damage[y] is set if (x, y) needs repainting
+    private int[] damage = new int[22];
+    // hash of the occupancy, kept up to date by set() and clear()
+    private long hash = 0;
 
     /*** METHODS ***/
 
+    /**
+     * Hash some locations of a row.
+     * @param y
+     * @param m occupancy mask
+     * @return XOR of the keys of the locations in 'm'
+     */
+    public static long hash(int y, int m)
+    {
+        long h = 0;
+        m &= FULL;
+        while (m != 0)
+        {
+            h ^= ZOBRIST[y * 10 + Integer.numberOfTrailingZeros(m)];
+            m &= m - 1;
+        }
+        return h;
+    }
+
+    /**
+     * Hash a packed board, the same as getHash() would be
+     * for a grid w/ the same occupancy.
+     * @param rows packed boards, see Heuristic
+     * @param off index of the bottom row of the board
+     * @return hash
+     */
+    public static long hash(int[] rows, int off)
+    {
+        long h = 0;
+        for (int y = 0; y < 22; y++)
+            h ^= hash(y, rows[off + y]);
+        return h;
+    }
+
+    /**
+     * Get the hash of the occupancy, equal for equally
+     * occupied grids regardless of the kinds.
+     * @return Zobrist hash
+     */
+    public long getHash()
+    {
+        return this.hash;
+    }
+
     /**
      * Test grid location.
      * @param x
@@ -24,7 +98,33 @@ public class Grid
     {
         if (x < 0 || x > 9 || y < 0 || y > 21)
             return false;
-        return this.grid[y][x] != 0;
+        return (this.rows[y] & (1 << x)) != 0;
+    }
+
+    /**
+     * Get the occupancy mask of a row.
+     * @param y
+     * @return bit 'x' is set if location (x, y) is occupied,
+     *         rows outside the grid are empty
+     */
+    public int row(int y)
+    {
+        if (y < 0 || y > 21)
+            return 0;
+        return this.rows[y];
+    }
+
+    /**
+     * Get the surface height of a column.
+     * @param x
+     * @return one above the highest occupied location in
+     *         column 'x', 0 if it's empty or out of bounds
+     */
+    public int height(int x)
+    {
+        if (x < 0 || x > 9)
+            return 0;
+        return this.heights[x];
     }
 
     /**
@@ -37,11 +137,114 @@ public class Grid
     {
         if (x < 0 || x > 9 || y < 0 || y > 21)
             return;
-        this.grid[y][x] = k.ordinal();
-        this.rows[y]++;
+        this.kinds[y * 10 + x] = (byte) k.ordinal();
+        this.damage[y] |= 1 << x;
+        if (((this.rows[y] >> x & 1) != 0) == k.equals(Kind.NONE))
+            this.hash ^= ZOBRIST[y * 10 + x];
+        if (k.equals(Kind.NONE)) {
+            this.rows[y] &= ~(1 << x);
+            if (this.heights[x] == y + 1)
+                surface(1 << x);
+        } else {
+            this.rows[y] |= (1 << x);
+            if (this.heights[x] <= y)
+                this.heights[x] = y + 1;
+        }
+    }
+
+    /**
+     * Recompute the surface heights of some columns
+     * by walking down the rows until each is found.
+     * @param cols mask of columns to recompute
+     */
+    private void surface(int cols)
+    {
+        for (int x = 0; x < 10; x++)
+            if ((cols & (1 << x)) != 0)
+                this.heights[x] = 0;
+
+        for (int y = 21; y >= 0 && cols != 0; y--)
+        {
+            int m = this.rows[y] & cols;
+            cols &= ~m;
+            while (m != 0)
+            {
+                int x = Integer.numberOfTrailingZeros(m);
+                this.heights[x] = y + 1;
+                m &= m - 1;
+            }
+        }
     }
 
     /**
+     * Overwrite this grid w/ the contents of another,
+     * damaging only the locations which differ.
+     * @param other
+     */
+    public void copy(Grid other)
+    {
+        for (int i = 0; i < 22 * 10; i++)
+            if (this.kinds[i] != other.kinds[i])
+                this.damage[i / 10] |= 1 << (i % 10);
+
+        System.arraycopy(other.rows, 0, this.rows, 0, 22);
+        System.arraycopy(other.kinds, 0, this.kinds, 0, 22 * 10);
+        System.arraycopy(other.heights, 0, this.heights, 0, 10);
+        this.hash = other.hash;
+    }
+
+    /**
+     * Write the contents, two locations per byte.
+     * @param b buffer
+     */
+    public void write(ByteBuffer b)
+    {
+        for (int i = 0; i < 22 * 10; i += 2)
+            b.put((byte) (this.kinds[i] | this.kinds[i + 1] << 4));
+    }
+
+    /**
+     * Overwrite the contents w/ those written by write().
+     * @param b buffer
+     */
+    public void read(ByteBuffer b)
+    {
+        for (int y = 0; y < 22; y++)
+        {
+            this.rows[y] = 0;
+            this.damage[y] = FULL;
+        }
+
+        for (int i = 0; i < 22 * 10; i += 2)
+        {
+            int v = b.get();
+            this.kinds[i] = (byte) (v & 0xF);
+            this.kinds[i + 1] = (byte) (v >> 4 & 0xF);
+        }
+
+        for (int i = 0; i < 22 * 10; i++)
+            if (this.kinds[i] != 0)
+                this.rows[i / 10] |= 1 << (i % 10);
+        surface(FULL);
+        this.hash = hash(this.rows, 0);
+    }
+
+    /**
+     * Overwrite the occupancy w/ packed row masks, for searching.
+     * Kinds are left as they are, so the grid shouldn't be drawn.
+     * @param rows packed boards, see Heuristic
+     * @param off index of the bottom row of the board
+     */
+    public void load(int[] rows, int off)
+    {
+        System.arraycopy(rows, off, this.rows, 0, 22);
+        surface(FULL);
+        this.hash = hash(this.rows, 0);
+    }
+
+    /**
+     * Remove full rows, compacting the ones above
+     * them downwards in a single pass.
      * @return number of lines cleared
      */
     public int clear()
@@ -49,57 +252,113 @@ public class Grid
         int n = 0;
         for (int i = 0; i < 22; i++)
         {
-            if (rows[i] == 10) {
+            if (rows[i] == FULL) {
                 n++;
-                for (int j = i; j < 22; j++)
-                {
-                    if (j < 21) {
-                        rows[j] = rows[j+1];
-                        grid[j] = Arrays.copyOf(grid[j+1], 10);
-                    } else {
-                        rows[j] = 0;
-                        Arrays.fill(grid[j], 0);
-                    }
-                }
+            } else if (n > 0) {
+                damage[i - n] = FULL;
+                rows[i - n] = rows[i];
+                System.arraycopy(kinds, i * 10, kinds, (i - n) * 10, 10);
             }
         }
 
+        // vacate the top
+        for (int i = 22 - n; i < 22; i++)
+        {
+            rows[i] = 0;
+            damage[i] = FULL;
+            for (int j = i * 10; j < i * 10 + 10; j++)
+                kinds[j] = 0;
+        }
+
+        // every row above the first cleared one moved, so
+        // rehash, which only visits occupied locations
+        if (n > 0) {
+            surface(FULL);
+            this.hash = hash(this.rows, 0);
+        }
         return n;
     }
 
+    /**
+     * Mark a location as needing to be repainted.
+     * @param x
+     * @param y
+     */
+    public void damage(int x, int y)
+    {
+        if (x < 0 || x > 9 || y < 0 || y > 21)
+            return;
+        this.damage[y] |= 1 << x;
+    }
+
     /**
      * Draw the grid.
      * @param g graphics context
      */
     public void draw(Graphics g)
     {
-        Rectangle r = g.getClipBounds();
+        // anything beyond the clip is discarded anyway
         int sz = Facade.SIZE;
-        int w = r.width;
-        int h = r.height;
+        int w = 10 * sz;
+        int h = 22 * sz;
 
         g.setColor(Color.BLACK);
         g.fillRect(0, 2 * sz, w, h);
 
+        g.setColor(Color.WHITE);
+        for (int y = 2; y < 22; y++)
+            g.drawLine(0, y * sz, w, y * sz);
+        for (int x = 1; x < 10; x++)
+            g.drawLine(x * sz, 2 * sz, x * sz, h);
+
         for (int y = 0; y < 22; y++)
         {
-            if (y > 1) {
-                g.setColor(Color.WHITE);
-                g.drawLine(0, y * sz, w, y * sz);
+            this.damage[y] = 0;
+            for (int x = 0; x < 10; x++)
+            {
+                int i = this.kinds[y * 10 + x];
+                if (i == 0)
+                    continue;
+                Facade.block(g, i, x * sz, (21 - y) * sz, sz);
             }
+        }
+    }
 
-            for (int x = 0; x < 10; x++)
+    /**
+     * Repaint only the damaged locations, on top of what was
+     * drawn previously by draw() or repair().
+     * @param g graphics context
+     */
+    public void repair(Graphics g)
+    {
+        int sz = Facade.SIZE;
+        for (int y = 0; y < 22; y++)
+        {
+            int m = this.damage[y];
+            this.damage[y] = 0;
+            while (m != 0)
             {
-                if (x > 0) {
+                int x = Integer.numberOfTrailingZeros(m);
+                m &= m - 1;
+
+                int px = x * sz;
+                int py = (21 - y) * sz;
+                int i = this.kinds[y * 10 + x];
+                if (i != 0) {
+                    Facade.block(g, i, px, py, sz);
+                    continue;
+                }
+
+                // empty cell, along w/ its top and left lines
+                g.setColor(Color.BLACK);
+                g.fillRect(px, py, sz, sz);
+                if (y < 20) {
                     g.setColor(Color.WHITE);
-                    g.drawLine(x * sz, 2 * sz, x * sz, h);
+                    g.drawLine(px, py, px + sz - 1, py);
+                    if (x > 0)
+                        g.drawLine(px, py, px, py + sz - 1);
                 }
-                int i = this.grid[y][x];
-                if (i == 0)
-                    continue;
-                g.setColor(Piece.COLORS[i]);
-                Facade.block(g, x * sz, (21 - y) * sz, sz);
             }
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,60 @@
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock-free triple buffer of snapshots between one producer (the
+ * simulation thread) and one consumer (the render thread).
+ *
+ * The producer fills back() and publishes it by swapping it with the
+ * middle buffer; the consumer swaps its front buffer with the middle
+ * one only if something new was published. Neither side ever waits on
+ * the other, and the consumer always gets the latest snapshot.
+ */
+public class Handoff
+{
+    /*** STATIC DATA ***/
+
+    // set in 'middle' when it holds an unread snapshot
+    private static final int FRESH = 4;
+
+    /*** INSTANCE VARIABLES ***/
+
+    private final Snapshot[] buffers = new Snapshot[]
+    {
+        new Snapshot(), new Snapshot(), new Snapshot()
+    };
+
+    private final AtomicInteger middle = new AtomicInteger(1);
+    private int back = 0;
+    private int front = 2;
+
+    /*** METHODS ***/
+
+    /**
+     * Producer only.
+     * @return the snapshot to fill before calling publish()
+     */
+    public Snapshot back()
+    {
+        return this.buffers[this.back];
+    }
+
+    /**
+     * Producer only, make the back snapshot available.
+     */
+    public void publish()
+    {
+        this.back = this.middle.getAndSet(this.back | FRESH) & 3;
+    }
+
+    /**
+     * Consumer only.
+     * @return the latest published snapshot, which stays
+     *         untouched until the next call
+     */
+    public Snapshot take()
+    {
+        if ((this.middle.get() & FRESH) != 0)
+            this.front = this.middle.getAndSet(this.front) & 3;
+        return this.buffers[this.front];
+    }
+}
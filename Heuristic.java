@@ -0,0 +1,256 @@
+/**
+ * Scores a board for the bots, higher being better, as a weighted sum
+ * of features of the stack. The default weights are those found by
+ * Yiyuan Lee's genetic search for the first four features, which
+ * leaves row transitions and wells out.
+ *
+ * Boards are packed as 22 row masks (see Grid.row()) in an int array,
+ * so that many of them can be stored next to each other, and scored
+ * together w/ SIMD instructions when the Vector API is available.
+ */
+public class Heuristic
+{
+    /*** STATIC DATA ***/
+
+    /** Ints taken by a packed board. */
+    public static final int ROWS = 22;
+
+    public static final Heuristic DEFAULT =
+        new Heuristic(-0.510066, 0.760666, -0.35663, -0.184483);
+
+    // vectorized evaluation, null w/o the incubator module
+    private static final Batch BATCH = batch();
+
+    /*** INSTANCE VARIABLES ***/
+
+    private final double height;
+    private final double lines;
+    private final double holes;
+    private final double bumpiness;
+    private final double transitions;
+    private final double wells;
+
+    /*** METHODS ***/
+
+    /**
+     * Scores consecutive boards at once, see evaluate().
+     */
+    public interface Batch
+    {
+        /**
+         * @param h weights
+         * @param rows packed boards, ROWS apart
+         * @param lines lines cleared getting to each board, null for none
+         * @param scores receives the score of each board
+         * @param from index of the first board
+         * @param to index past the last board
+         */
+        void evaluate(Heuristic h, int[] rows, int[] lines,
+                double[] scores, int from, int to);
+    }
+
+    /**
+     * Load the vectorized evaluator, which only links if the JVM
+     * was started w/ --add-modules jdk.incubator.vector.
+     * @return evaluator, null if it's missing or can't be used
+     */
+    private static Batch batch()
+    {
+        String p = Heuristic.class.getPackageName();
+        try {
+            Class<?> c = Class.forName(p.isEmpty() ? "VectorHeuristic" : p + ".VectorHeuristic");
+            return (Batch) c.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return true if evaluate() w/ many boards uses SIMD instructions
+     */
+    public static boolean isVectorized()
+    {
+        return BATCH != null;
+    }
+
+    /**
+     * Create new Heuristic.
+     * @param height weight of the sum of column heights
+     * @param lines weight of the lines cleared getting there
+     * @param holes weight of the empty locations w/ a block above
+     * @param bumpiness weight of the height differences between
+     *        neighbouring columns
+     * @param transitions weight of the changes between empty and filled
+     *        along the rows, counting the walls as filled
+     * @param wells weight of the empty locations above the surface w/
+     *        both neighbours filled
+     */
+    public Heuristic(double height, double lines, double holes, double bumpiness,
+            double transitions, double wells)
+    {
+        this.height = height;
+        this.lines = lines;
+        this.holes = holes;
+        this.bumpiness = bumpiness;
+        this.transitions = transitions;
+        this.wells = wells;
+    }
+
+    /**
+     * Create new Heuristic which ignores row transitions and wells.
+     * @param height
+     * @param lines
+     * @param holes
+     * @param bumpiness
+     */
+    public Heuristic(double height, double lines, double holes, double bumpiness)
+    {
+        this(height, lines, holes, bumpiness, 0, 0);
+    }
+
+    /**
+     * Parse weights, e.g. from a system property.
+     * @param s comma separated weights in constructor order
+     * @return new heuristic
+     * @throws IllegalArgumentException if there aren't four or six numbers
+     */
+    public static Heuristic parse(String s)
+    {
+        String[] w = s.split(",");
+        if (w.length != 4 && w.length != 6)
+            throw new IllegalArgumentException
+                ("Expected four or six weights: height,lines,holes,bumpiness[,transitions,wells]");
+
+        double[] d = new double[6];
+        for (int i = 0; i < w.length; i++)
+            d[i] = Double.parseDouble(w[i].trim());
+        return new Heuristic(d[0], d[1], d[2], d[3], d[4], d[5]);
+    }
+
+    /**
+     * Score a board.
+     * @param rows packed boards
+     * @param off index of the bottom row of the board
+     * @param n lines cleared getting to it
+     * @return score
+     */
+    public double evaluate(int[] rows, int off, int n)
+    {
+        // walking down, 'seen' holds the columns whose height is above
+        // the current row, so each row adds one to the height of those,
+        // and one to the difference of neighbours of which only one is
+        int seen = 0;
+        int holes = 0;
+        int sum = 0;
+        int bump = 0;
+        int trans = 0;
+        int wells = 0;
+        for (int y = 21; y >= 0; y--)
+        {
+            int r = rows[off + y];
+            seen |= r;
+            holes += Integer.bitCount(seen & ~r);
+            sum += Integer.bitCount(seen);
+            bump += Integer.bitCount((seen ^ (seen >>> 1)) & (Grid.FULL >>> 1));
+
+            // walls on either side, only rows up to the top of the stack
+            int w = r << 1 | 0x801;
+            if (seen != 0)
+                trans += Integer.bitCount((w ^ (w >>> 1)) & 0x7FF);
+            wells += Integer.bitCount(w >>> 2 & w & ~seen & Grid.FULL);
+        }
+
+        return this.height * sum + this.lines * n
+            + this.holes * holes + this.bumpiness * bump
+            + this.transitions * trans + this.wells * wells;
+    }
+
+    /**
+     * Score consecutive boards, as evaluate() does each one.
+     * @param rows packed boards, ROWS apart
+     * @param lines lines cleared getting to each board, null to
+     *        score the boards alone
+     * @param scores receives the score of each board
+     * @param from index of the first board
+     * @param to index past the last board
+     */
+    public void evaluate(int[] rows, int[] lines, double[] scores, int from, int to)
+    {
+        if (BATCH != null) {
+            BATCH.evaluate(this, rows, lines, scores, from, to);
+            return;
+        }
+        for (int i = from; i < to; i++)
+            scores[i] = evaluate(rows, i * ROWS, lines == null ? 0 : lines[i]);
+    }
+
+    /**
+     * @return weight of the sum of column heights
+     */
+    public double getHeight()
+    {
+        return this.height;
+    }
+
+    /**
+     * @return weight of the lines cleared
+     */
+    public double getLines()
+    {
+        return this.lines;
+    }
+
+    /**
+     * @return weight of the holes
+     */
+    public double getHoles()
+    {
+        return this.holes;
+    }
+
+    /**
+     * @return weight of the bumpiness
+     */
+    public double getBumpiness()
+    {
+        return this.bumpiness;
+    }
+
+    /**
+     * @return weight of the row transitions
+     */
+    public double getTransitions()
+    {
+        return this.transitions;
+    }
+
+    /**
+     * @return weight of the wells
+     */
+    public double getWells()
+    {
+        return this.wells;
+    }
+
+    /**
+     * Remove full rows from a packed board.
+     * @param rows packed boards
+     * @param off index of the bottom row of the board
+     * @return number of lines cleared
+     */
+    public static int clear(int[] rows, int off)
+    {
+        int n = 0;
+        for (int y = 0; y < 22; y++)
+        {
+            int r = rows[off + y];
+            if (r == Grid.FULL)
+                n++;
+            else if (n > 0)
+                rows[off + y - n] = r;
+        }
+        for (int y = 22 - n; y < 22; y++)
+            rows[off + y] = 0;
+        return n;
+    }
+}
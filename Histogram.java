@@ -0,0 +1,105 @@
+/**
+ * Distribution of non-negative values in constant memory. Values are
+ * bucketed by their highest bit, and each power of two is split into
+ * SUB linear steps, so any percentile is within 1/SUB of the truth.
+ *
+ * Meant to be recorded by one thread; others may read it at any time,
+ * but can see a count or two go missing while it's being recorded.
+ */
+public class Histogram
+{
+    /*** STATIC DATA ***/
+
+    private static final int SUB_BITS = 4;
+    private static final int SUB = 1 << SUB_BITS;
+
+    /*** INSTANCE VARIABLES ***/
+
+    private final long[] counts = new long[64 * SUB];
+    private long count = 0;
+    private long sum = 0;
+    private long max = 0;
+
+    /*** METHODS ***/
+
+    /**
+     * @param v value
+     * @return bucket of the value
+     */
+    private static int index(long v)
+    {
+        if (v < SUB)
+            return (int) v;
+        int e = 63 - Long.numberOfLeadingZeros(v);
+        int s = (int) (v >>> (e - SUB_BITS)) & (SUB - 1);
+        return (e - SUB_BITS + 1) * SUB + s;
+    }
+
+    /**
+     * @param i bucket
+     * @return smallest value in the bucket
+     */
+    private static long lowest(int i)
+    {
+        if (i < SUB)
+            return i;
+        int e = i / SUB + SUB_BITS - 1;
+        return (long) (SUB + i % SUB) << (e - SUB_BITS);
+    }
+
+    /**
+     * Add a value, negative ones count as zero.
+     * @param v
+     */
+    public void record(long v)
+    {
+        v = Math.max(0, v);
+        this.counts[index(v)]++;
+        this.count++;
+        this.sum += v;
+        this.max = Math.max(this.max, v);
+    }
+
+    /**
+     * Get a percentile.
+     * @param p percentage, e.g. 99 for the 99th percentile
+     * @return highest value in the bucket holding the percentile,
+     *         0 if nothing was recorded
+     */
+    public long percentile(double p)
+    {
+        long n = (long) Math.ceil(p / 100 * this.count);
+        long seen = 0;
+        for (int i = 0; i < this.counts.length; i++)
+        {
+            seen += this.counts[i];
+            if (seen >= n && seen > 0)
+                return Math.min(lowest(i + 1) - 1, this.max);
+        }
+        return this.max;
+    }
+
+    /**
+     * @return number of values recorded
+     */
+    public long getCount()
+    {
+        return this.count;
+    }
+
+    /**
+     * @return mean value, 0 if nothing was recorded
+     */
+    public double getMean()
+    {
+        return this.count == 0 ? 0 : (double) this.sum / this.count;
+    }
+
+    /**
+     * @return highest value recorded
+     */
+    public long getMax()
+    {
+        return this.max;
+    }
+}
@@ -6,24 +6,31 @@ import java.awt.event.*;
 
 import static java.awt.event.KeyEvent.*;
 
-import java.util.Collections;
-import java.util.LinkedList;
-import java.util.Deque;
-import java.util.List;
-import java.util.concurrent.ConcurrentLinkedDeque;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 
 public class Main
     extends Frame
     implements Runnable,
-    ActionListener,
     KeyListener,
     WindowListener, 
     WindowFocusListener
 {
     /*** STATIC DATA ***/
 
-    private static final long FPS = 30;
-    private static final long PERIOD = 1000000000L / FPS;
+    // -Djetris.fps=N, 0 for uncapped, defaults to the display refresh rate
+    private static final int FPS = Integer.getInteger("jetris.fps", refresh());
+    private static final long PERIOD = FPS > 0 ? 1000000000L / FPS : 0;
+    private static final long TICK = 1000000000L / GameEngine.TICK_RATE;
 
     private static final int WIDTH = 480;
     private static final int HEIGHT = 640;
@@ -33,27 +40,126 @@ public class Main
     private static final Font HEAD = BASE.deriveFont(Font.BOLD, 20.f);
     private static final Font TEXT = BASE.deriveFont(Font.BOLD | Font.ITALIC, 30.f);
     private static final Font INFO = BASE.deriveFont(15.f);
+    private static final Font SMALL = new Font(Font.MONOSPACED, Font.PLAIN, 11);
 
-    /*** INSTANCE VARIABLES ***/
+    // un-scaled frame dimensions
+    private static final int FRAME_W = 642;
+    private static final int FRAME_H = 682;
+
+    // -Djetris.interpolation=nearest|bilinear|bicubic
+    private static final Object INTERPOLATION = interpolation(
+            System.getProperty("jetris.interpolation", "bilinear"));
+
+    // -Djetris.render=full to repaint the whole field every frame
+    private static final boolean INCREMENTAL =
+        !System.getProperty("jetris.render", "incremental").equals("full");
+
+    // -Djetris.early=false to wait for the next frame after input
+    private static final boolean EARLY =
+        !System.getProperty("jetris.early", "true").equals("false");
+
+    // -Djetris.das=10 -Djetris.arr=2 -Djetris.sdf=20, see GameEngine
+    private static final int DAS = Integer.getInteger("jetris.das", GameEngine.DAS);
+    private static final int ARR = Integer.getInteger("jetris.arr", GameEngine.ARR);
+    private static final int SDF = Integer.getInteger("jetris.sdf", GameEngine.SDF);
+
+    // -Djetris.randomizer=7bag|14bag|classic|random -Djetris.seed=N
+    private static final String RANDOMIZER =
+        System.getProperty("jetris.randomizer", "7bag");
+    private static final long SEED = Long.getLong("jetris.seed", System.nanoTime());
+
+    // -Djetris.preview=N, upcoming pieces shown, the panel fits five
+    private static final int PREVIEW =
+        Math.min(Integer.getInteger("jetris.preview", GameEngine.PREVIEW), GameEngine.PREVIEW);
+
+    // -Djetris.debug=true to report timing measurements
+    private static final boolean DEBUG = Boolean.getBoolean("jetris.debug");
+
+    // -Djetris.record=path to record the game, a directory
+    // to add a new file to it, see Replay
+    private static final String RECORD = System.getProperty("jetris.record");
 
-    private Thread worker = new Thread(this);
-    private Deque<AWTEvent> queue = new ConcurrentLinkedDeque<AWTEvent>();
-    private Grid grid = new Grid();
-    private Piece piece = null;
-    private Kind hold = Kind.NONE;
-    private List<Kind> bag = new LinkedList<>();
+    // -Djetris.replay=path to watch a recorded game
+    private static final String REPLAY = System.getProperty("jetris.replay");
 
-    private int score = 0;
-    private int lines = 0;
-    private int level = 1;
+    // -Djetris.bot=N to let the bot play, placing N pieces per second,
+    // -Djetris.weights=height,lines,holes,bumpiness to change its mind
+    private static final int BOT = Integer.getInteger("jetris.bot", 0);
+    private static final String WEIGHTS = System.getProperty("jetris.weights");
 
-    private boolean paused = false;
-    private boolean gameover = false;
-    private boolean holding = false;
+    // -Djetris.beam=N to have it plan ahead, keeping N boards per piece
+    private static final int BEAM = Integer.getInteger("jetris.beam", 0);
 
-    private Timer lock = new Timer(500, this);
-    private Timer down = new Timer(1000, this);
-    private long elapsed = 0;
+    // -Djetris.hud=true to show frame time and input latency
+    private static final boolean HUD = Boolean.getBoolean("jetris.hud");
+
+    // -Djetris.stats=N to log them every N seconds, 0 for never
+    private static final long STATS = Long.getLong("jetris.stats", 0) * 1000000000L;
+
+    // per-thread allocation counter, null if the JVM lacks one
+    private static final com.sun.management.ThreadMXBean MEMORY = memory();
+
+    /*** INSTANCE VARIABLES ***/
+
+    private Thread worker = new Thread(this, "render");
+    private Thread simulation = new Thread(this::simulate, "simulation");
+    private volatile boolean running = true;
+    private volatile boolean wake = false;
+
+    // owned by the simulation thread
+    private BlockingDeque<Stamped> queue = new LinkedBlockingDeque<Stamped>();
+    private GameEngine engine = new GameEngine(Randomizer.create(RANDOMIZER, SEED), PREVIEW);
+    private BitSet keys = new BitSet();
+    private long clock = 0;
+    private long lag = 0;
+    private ReplayWriter recorder = null;
+    private Replay replay = null;
+    private Policy bot = null;
+    private long botTime = 0;
+    private Finesse finesse = new Finesse();
+
+    // when the last key press applied was queued, in System.nanoTime()
+    private long lastInput = 0;
+
+    // from key presses being queued to being applied, in nanoseconds
+    private Histogram latency = new Histogram();
+
+    // shared between the two
+    private Handoff handoff = new Handoff();
+    private AtomicInteger changes = new AtomicInteger();
+
+    // owned by the render thread
+    private Snapshot snap = null;
+    private Grid view = new Grid();
+    private Piece[] pieces = new Piece[8];
+    private VolatileImage frame = null;
+    private Graphics2D canvas = null;
+    private Graphics field = null;
+    private boolean banner = false;
+    private Readout score = new Readout("SCORE: ");
+    private Readout lines = new Readout("LINES: ");
+    private Readout level = new Readout("LEVEL: ");
+    private Readout time = new Readout("TIME: ", 3);
+    private Readout pps = new Readout("PPS: ", 2);
+    private Readout apm = new Readout("APM: ", 1);
+    private Readout kpp = new Readout("KPP: ", 2);
+    private Readout lpm = new Readout("LPM: ", 1);
+    private Readout fin = new Readout("FINESSE: ", 1);
+
+    // from key presses being queued to being on screen, in nanoseconds,
+    // and when the last one shown was queued
+    private Histogram shown = new Histogram();
+    private long presented = 0;
+
+    // time between frames, in nanoseconds
+    private Histogram frameTimes = new Histogram();
+    private String[] hud = null;
+    private boolean hudDirty = false;
+
+    // bytes allocated by the render thread per frame
+    private long frames = 0;
+    private long allocSum = 0;
+    private long allocMax = 0;
 
     /*** METHODS ***/
 
@@ -69,187 +175,179 @@ public class Main
         
         addKeyListener(this);
         addWindowListener(this);
-        down.setRepeats(true);
+        engine.setHandling(DAS, ARR, SDF);
+        if (REPLAY != null)
+            play(new File(REPLAY));
+        else if (RECORD != null)
+            record(new File(RECORD));
+        engine.setFinesse(finesse);
+        if (BOT > 0 && replay == null) {
+            Heuristic h = WEIGHTS == null ? Heuristic.DEFAULT : Heuristic.parse(WEIGHTS);
+            if (BEAM > 0)
+                bot = new BeamSearch(h, BEAM, BeamSearch.BUDGET);
+            else
+                bot = new Bot(h, ForkJoinPool.commonPool());
+        }
+        publish();
         
         setVisible(true);
+        simulation.start();
         worker.start();
     }
 
     /**
-     * Add to the player score, lines
-     * cleared, and adjust speed.
-     * @param n number of lines cleared
+     * @return refresh rate of the default screen, or 60 if unknown
      */
-    public void score(int n)
+    private static int refresh()
     {
-        if (n <= 0)
-            return;
-
-        // variable level goal
-        this.lines += n;
-        if (this.lines >= 5 * this.level)
-            this.level++;
-
-        // speed up
-        int ms = (int) Math.pow(
-                (0.8 - (this.level - 1) * 0.007),
-                (this.level - 1));
-        down.setInitialDelay(ms);
-        down.restart();
-
-        // add to score
-        this.score += 100 * n * this.level;
+        int hz = GraphicsEnvironment.getLocalGraphicsEnvironment()
+            .getDefaultScreenDevice()
+            .getDisplayMode()
+            .getRefreshRate();
+        return hz == DisplayMode.REFRESH_RATE_UNKNOWN ? 60 : hz;
     }
 
     /**
-     * Generate a new piece.
+     * @return the allocation counter of the JVM, if supported
      */
-    private void next()
+    private static com.sun.management.ThreadMXBean memory()
     {
-        Kind k;
+        java.lang.management.ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+        if (!(mx instanceof com.sun.management.ThreadMXBean))
+            return null;
+
+        com.sun.management.ThreadMXBean m = (com.sun.management.ThreadMXBean) mx;
+        if (!m.isThreadAllocatedMemorySupported())
+            return null;
+        m.setThreadAllocatedMemoryEnabled(true);
+        return m;
+    }
 
-        // 7-bag generator
-        if (this.bag.size() < 6) {
-            List<Kind> q = new LinkedList<>();
-            for (int i = 1; i < 8; i++)
-            {
-                k = Kind.values()[i];
-                q.add(k);
-            }
-            Collections.shuffle(q);
-            this.bag.addAll(q);
+    /**
+     * Start recording the game.
+     * @param f file, or directory to create one in
+     */
+    private void record(File f)
+    {
+        if (f.isDirectory())
+            f = new File(f, String.format("jetris-%tY%<tm%<td-%<tH%<tM%<tS.jtr", new Date()));
+        try {
+            recorder = new ReplayWriter(f.toPath(), RANDOMIZER, SEED, PREVIEW, DAS, ARR, SDF);
+        } catch (IOException ex) {
+            System.err.println("Can't record to " + f + ": " + ex.getMessage());
         }
+    }
 
-        this.holding = false;
-        k = this.bag.remove(0);
-        this.piece = new Piece(k, this.grid);
-
-        // test for block-out
-        if (this.piece.collides())
-            this.gameover = true;
-
-        // see guideline
-        this.piece.move(Direction.DOWN);
-
-        this.lock.stop();
-        this.down.restart();
+    /**
+     * Replace the game w/ a recorded one.
+     * @param f replay file
+     */
+    private void play(File f)
+    {
+        try {
+            replay = Replay.read(f.toPath());
+            engine = replay.start();
+        } catch (IOException ex) {
+            System.err.println("Can't play " + f + ": " + ex.getMessage());
+        }
     }
 
     /**
-     * Hold current piece.
+     * Record a call made to the engine, if recording.
+     * @param a action, null for pause(true)
+     * @param pressed true for press(), false for release()
      */
-    private void hold()
+    private void log(Action a, boolean pressed)
     {
-        if (this.holding)
+        if (recorder == null)
             return;
 
-        if (!this.hold.equals(Kind.NONE))
-            this.bag.add(0, this.hold);
-
-        this.hold = this.piece.getKind();
-        next();
-        this.holding = true;
+        try {
+            long t = engine.getElapsed();
+            if (a == null)
+                recorder.suspend(t);
+            else if (pressed)
+                recorder.press(t, a);
+            else
+                recorder.release(t, a);
+        } catch (IOException ex) {
+            System.err.println("Recording failed: " + ex.getMessage());
+            recorder = null;
+        }
     }
 
     /**
-     * Toggle pause.
-     * @param p
+     * Stop recording, w/ the final result as the footer.
      */
-    private void pause(boolean p)
+    private void stopRecording()
     {
-        this.paused = p;
-        if (p) {
-            down.stop();
-            lock.stop();
-        } else {
-            down.restart();
+        try {
+            recorder.end(engine.getElapsed(), engine.getScore(), engine.getLines());
+            recorder.close();
+        } catch (IOException ex) {
+            System.err.println("Recording failed: " + ex.getMessage());
         }
+        recorder = null;
     }
 
     /**
-     * Stop the game.
+     * Parse an interpolation hint.
+     * @param name
+     * @return rendering hint value
      */
-    private void stop()
+    private static Object interpolation(String name)
     {
-        this.down.stop();
-        this.lock.stop();
+        switch (name)
+        {
+            case "nearest":
+                return RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR;
+            case "bicubic":
+                return RenderingHints.VALUE_INTERPOLATION_BICUBIC;
+            default:
+                return RenderingHints.VALUE_INTERPOLATION_BILINEAR;
+        }
     }
 
     /**
-     * Process user input.
+     * Map a key to a player action.
      * @param key
+     * @return action, or null if the key isn't bound
      */
-    private void input(int key)
+    private static Action action(int key)
     {
-        if (this.gameover)
-            return;
-        
-        if (key == VK_ESCAPE || key == VK_F1)
-            pause(!this.paused);
-
-        if (this.paused)
-            return;
-        
         switch (key)
         {
+            case VK_ESCAPE:
+            case VK_F1:
+                return Action.PAUSE;
+
             // rotate left (ccw)
             case VK_Z:
             case VK_CONTROL:
-                if (this.piece.rotate(Direction.LEFT)
-                    && this.lock.isRunning())
-                    this.lock.restart();
-                break;
+                return Action.ROTATE_LEFT;
 
             // rotate right (cw)
             case VK_X:
             case VK_UP:
-                if (this.piece.rotate(Direction.RIGHT)
-                    && this.lock.isRunning())
-                    this.lock.restart();
-                break;
-            
-            // move left
+                return Action.ROTATE_RIGHT;
+
             case VK_LEFT:
-                if (this.piece.move(Direction.LEFT)
-                    && this.lock.isRunning())
-                    this.lock.restart();
-                break;
+                return Action.LEFT;
 
-            // move right
             case VK_RIGHT:
-                if (this.piece.move(Direction.RIGHT)
-                    && this.lock.isRunning())
-                    this.lock.restart();
-                break;
+                return Action.RIGHT;
 
-            // soft drop
             case VK_DOWN:
-                this.down.restart();
-                if (!this.piece.move(Direction.DOWN))
-                    this.lock.restart();
-                else
-                    // 1 pt. per block (soft) dropped
-                    this.score += 1;
-                break;
+                return Action.SOFT_DROP;
 
-            // hard drop
             case VK_SPACE:
-                // 2 pts. per block (hard) dropped
-                this.score += 2 * this.piece.drop();
-                this.gameover = this.piece.place();
-                score(this.grid.clear());
-                next();
-                break;
+                return Action.HARD_DROP;
 
-            // hold
             case VK_C:
             case VK_SHIFT:
-                hold();
-                break;
+                return Action.HOLD;
         }
-
-        if (this.gameover)
-            stop();
+        return null;
     }
 
     /**
@@ -258,44 +356,242 @@ public class Main
      */
     public void render(Graphics g)
     {
-        // create un-scaled image
+        // draw un-scaled image, the back buffer is only
+        // recreated when it no longer suits the screen
         GraphicsConfiguration gc = getGraphicsConfiguration();
-        BufferedImage bi = gc.createCompatibleImage(642, 682);
-        Graphics2D g2d = bi.createGraphics();
-        
+        int dirty = changes.getAndSet(0);
+        snap = handoff.take();
+        do {
+            int code = VolatileImage.IMAGE_INCOMPATIBLE;
+            if (frame != null)
+                code = frame.validate(gc);
+            if (code == VolatileImage.IMAGE_INCOMPATIBLE)
+                frame = gc.createCompatibleVolatileImage(FRAME_W, FRAME_H);
+            if (code != VolatileImage.IMAGE_OK) {
+                dirty = GameEngine.DIRTY_ALL;
+
+                // contexts are kept for as long as the image
+                if (canvas != null) {
+                    field.dispose();
+                    canvas.dispose();
+                }
+                canvas = frame.createGraphics();
+                field = canvas.create(166, 0, 310, 678);
+            }
+
+            compose(canvas, field, dirty);
+        } while (frame.contentsLost());
+
+        // scale and blit
+        int wh = getHeight();
+        int ww = getWidth();
+        int ih = wh - 2 * MARGIN;
+        int iw = ih * FRAME_W / FRAME_H;
+        Graphics2D g2d = (Graphics2D) g;
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, INTERPOLATION);
+        g2d.drawImage(frame, (ww - iw) / 2, MARGIN, iw, ih, null);
+    }
+
+    /**
+     * Draw the latest snapshot onto the un-scaled image. The image
+     * persists between frames, so panels are only redrawn when the engine
+     * has flagged them as changed, and only cells of the field which differ
+     * from what was last drawn are repainted (see Grid.repair()).
+     * @param g2d graphics context
+     * @param fg graphics context of the field
+     * @param dirty change flags, see GameEngine.changes()
+     */
+    private void compose(Graphics2D g2d, Graphics fg, int dirty)
+    {
+        if (dirty == GameEngine.DIRTY_ALL)
+            background(g2d);
+
+        if ((dirty & GameEngine.DIRTY_HOLD) != 0)
+            hold(g2d);
+
+        if ((dirty & GameEngine.DIRTY_NEXT) != 0)
+            preview(g2d);
+
+        if ((dirty & GameEngine.DIRTY_STATS) != 0)
+            stats(g2d);
+
+        // field, incrementally unless a banner came or went
+        boolean banner = snap.isGameOver() || snap.isPaused();
+        view.copy(snap.getGrid());
+        if (!INCREMENTAL || dirty == GameEngine.DIRTY_ALL
+            || banner != this.banner) {
+            fg.setColor(Color.BLACK);
+            fg.fillRect(0, 0, 310, 62);
+            view.draw(fg);
+        } else {
+            view.repair(fg);
+        }
+
+        int k = snap.getKind().ordinal();
+        if (pieces[k] == null)
+            pieces[k] = new Piece(snap.getKind(), view);
+        pieces[k].setPosition(snap.getX(), snap.getY(), snap.getState());
+        pieces[k].draw(fg);
+        this.banner = banner;
+
+        // messages
+        g2d.setFont(TEXT);
+        if (snap.isGameOver()) {
+            g2d.setColor(Color.WHITE);
+            g2d.fillRect(166, 310, 310, 40);
+            g2d.setColor(Color.BLACK);
+            g2d.drawString("Game Over", 228, 341);
+        }
+        if (snap.isPaused()) {
+            g2d.setColor(Color.WHITE);
+            g2d.fillRect(166, 310, 310, 40);
+            g2d.setColor(Color.BLACK);
+            g2d.drawString("Paused", 260, 341);
+        }
+
+        if (HUD && (hudDirty || dirty == GameEngine.DIRTY_ALL))
+            hud(g2d);
+
+        // time
+        g2d.setColor(Color.BLACK);
+        g2d.fillRect(0, 664, 162, 18);
+        g2d.setFont(INFO);
+        g2d.setColor(Color.WHITE);
+        time.set(snap.getElapsed() * 1000L / GameEngine.TICK_RATE);
+        time.draw(g2d, 160 - time.length() * 10, 682);
+
+        metrics(g2d);
+    }
+
+    /**
+     * Draw the pace of play over the last few seconds (see Metrics)
+     * above the score, in the same column as the time.
+     * @param g2d graphics context
+     */
+    private void metrics(Graphics2D g2d)
+    {
+        g2d.setColor(Color.BLACK);
+        g2d.fillRect(0, 424, 162, 144);
+
+        g2d.setFont(INFO);
+        g2d.setColor(Color.WHITE);
+        pps.set(Math.round(snap.getPps() * 100));
+        pps.draw(g2d, 160 - pps.length() * 10, 442);
+        apm.set(Math.round(snap.getApm() * 10));
+        apm.draw(g2d, 160 - apm.length() * 10, 472);
+        kpp.set(Math.round(snap.getKpp() * 100));
+        kpp.draw(g2d, 160 - kpp.length() * 10, 502);
+        lpm.set(Math.round(snap.getLpm() * 10));
+        lpm.draw(g2d, 160 - lpm.length() * 10, 532);
+        fin.set(Math.round(snap.getFinesse() * 1000));
+        fin.draw(g2d, 160 - fin.length() * 10, 562);
+    }
+
+    /**
+     * Draw the frame time and input latency percentiles
+     * into the otherwise empty top left corner.
+     * @param g2d graphics context
+     */
+    private void hud(Graphics2D g2d)
+    {
+        g2d.setColor(Color.BLACK);
+        g2d.fillRect(0, 0, 162, 60);
+        hudDirty = false;
+        if (hud == null)
+            return;
+
+        g2d.setFont(SMALL);
+        g2d.setColor(Color.GRAY);
+        for (int i = 0; i < hud.length; i++)
+            g2d.drawString(hud[i], 4, 14 + i * 14);
+    }
+
+    /**
+     * Format a row of percentiles.
+     * @param name
+     * @param h histogram of nanoseconds
+     * @return p50, p99 and max in milliseconds
+     */
+    private static String percentiles(String name, Histogram h)
+    {
+        return String.format("%-5s %5.1f %5.1f %5.1f", name,
+                h.percentile(50) / 1e6, h.percentile(99) / 1e6, h.getMax() / 1e6);
+    }
+
+    /**
+     * Refresh the HUD, and log the percentiles if due.
+     * @param log true to print them to stderr
+     */
+    private void instrument(boolean log)
+    {
+        String frame = percentiles("FRAME", frameTimes);
+        String input = percentiles("INPUT", latency);
+        String present = percentiles("SHOWN", shown);
+        if (HUD) {
+            hud = new String[] { "ms      p50   p99   max", frame, input, present };
+            hudDirty = true;
+        }
+        if (log)
+            System.err.printf("%s%n%s%n%s%n", frame, input, present);
+    }
+
+    /**
+     * Draw the static frame around the panels.
+     * @param g2d graphics context
+     */
+    private void background(Graphics2D g2d)
+    {
+        g2d.setColor(Color.BLACK);
+        g2d.fillRect(0, 0, FRAME_W, FRAME_H);
+
         // field
         g2d.setColor(Color.WHITE);
         g2d.fillRect(162, 62, 318, 682);
-        
-        Graphics fg = g2d.create(166, 0, 310, 678);
-        grid.draw(fg);
-        piece.draw(fg);
 
         // hold
         g2d.setFont(HEAD);
-        g2d.setColor(Color.WHITE);
         g2d.fillRect(0, 62, 166, 126);
         g2d.setColor(Color.BLACK);
-        g2d.fillRect(4, 92, 158, 92);
-
         g2d.drawString("HOLD", 4, 86);
-        Facade fa = new Facade(this.hold);
-        if (this.hold.equals(Kind.I))
-            fa.fill(g2d, 21, 184, Facade.SIZE);
-        else if (!this.hold.equals(Kind.NONE))
-            fa.fill(g2d, 36, 169, Facade.SIZE);
 
         // preview
         g2d.setColor(Color.WHITE);
         g2d.fillRect(476, 62, 166, 503);
         g2d.setColor(Color.BLACK);
-        g2d.fillRect(480, 92, 158, 469);
         g2d.drawString("NEXT", 480, 86);
+    }
+
+    /**
+     * Draw the hold panel.
+     * @param g2d graphics context
+     */
+    private void hold(Graphics2D g2d)
+    {
+        Kind hold = snap.getHold();
+
+        g2d.setColor(Color.BLACK);
+        g2d.fillRect(4, 92, 158, 92);
+
+        Facade fa = Facade.get(hold);
+        if (hold.equals(Kind.I))
+            fa.fill(g2d, 21, 184, Facade.SIZE);
+        else if (!hold.equals(Kind.NONE))
+            fa.fill(g2d, 36, 169, Facade.SIZE);
+    }
+
+    /**
+     * Draw the preview panel.
+     * @param g2d graphics context
+     */
+    private void preview(Graphics2D g2d)
+    {
+        g2d.setColor(Color.BLACK);
+        g2d.fillRect(480, 92, 158, 469);
 
-        for (int i = 0; i < 5; i++)
+        for (int i = 0; i < snap.getPreviewLength(); i++)
         {
-            Kind k = this.bag.get(i);
-            Facade f = new Facade(k);
+            Kind k = snap.getPreview(i);
+            Facade f = Facade.get(k);
             int j = (i + 1) * 3 * Facade.SIZE;
             
             if (k.equals(Kind.I))
@@ -303,177 +599,364 @@ public class Main
             else if (!k.equals(Kind.NONE))
                 f.fill(g2d, 512, 92 + j, Facade.SIZE);
         }
+    }
 
-        // messages
-        g2d.setFont(TEXT);
-        if (this.gameover) {
-            g2d.setColor(Color.WHITE);
-            g2d.fillRect(166, 310, 310, 40);
-            g2d.setColor(Color.BLACK);
-            g2d.drawString("Game Over", 228, 341);
-        }
-        if (this.paused) {
-            g2d.setColor(Color.WHITE);
-            g2d.fillRect(166, 310, 310, 40);
-            g2d.setColor(Color.BLACK);
-            g2d.drawString("Paused", 260, 341);
-        }
+    /**
+     * Draw the score, lines, and level.
+     * @param g2d graphics context
+     */
+    private void stats(Graphics2D g2d)
+    {
+        g2d.setColor(Color.BLACK);
+        g2d.fillRect(0, 572, 162, 88);
 
-        // inf
         g2d.setFont(INFO);
         g2d.setColor(Color.WHITE);
-        String scr = String.format("SCORE: %d", score);
-        g2d.drawString(scr, 150 - scr.length() * 10, 592);
-        String lin = String.format("LINES: %d", lines);
-        g2d.drawString(lin, 160 - lin.length() * 10, 622);
-        String lvl = String.format("LEVEL: %d", level);
-        g2d.drawString(lvl, 156 - lvl.length() * 10, 652);
-        String time = String.format("TIME: %d.%03d", elapsed / 1000L, elapsed % 1000L);
-        g2d.drawString(time, 160 - time.length() * 10, 682);
+        score.set(snap.getScore());
+        score.draw(g2d, 150 - score.length() * 10, 592);
+        lines.set(snap.getLines());
+        lines.draw(g2d, 160 - lines.length() * 10, 622);
+        level.set(snap.getLevel());
+        level.draw(g2d, 156 - level.length() * 10, 652);
+    }
 
-        // scale and blit
-        int wh = getHeight();
-        int ww = getWidth();
-        int ih = wh - 2 * MARGIN;
-        int iw = ih * 642/682;
-        Image si = bi.getScaledInstance(iw, ih, Image.SCALE_SMOOTH);
-        g.drawImage(si, (ww - iw) / 2, MARGIN, Color.BLACK, null);
+    /**
+     * Advance the game clock by the whole ticks
+     * elapsed since the last call.
+     */
+    private void advance()
+    {
+        long now = System.nanoTime();
+        lag += now - clock;
+        clock = now;
+        if (replay == null) {
+            engine.step(lag / TICK);
+        } else if (!replay.isDone()) {
+            replay.advance(engine, lag / TICK);
+            if (replay.isDone())
+                System.err.println(replay.verify(engine)
+                        ? "Replay verified" : "Replay does not match its result!");
+        }
+        lag %= TICK;
+    }
+
+    /**
+     * Let the bot place the falling piece, once it's due.
+     */
+    private void autoplay()
+    {
+        if (engine.isGameOver() || engine.isPaused()
+            || engine.getElapsed() < botTime)
+            return;
+
+        Action[] actions = bot.plan(engine);
+        if (actions == null)
+            return;
+
+        // as if each key was tapped, so recordings play back
+        for (Action a : actions)
+        {
+            engine.press(a);
+            log(a, true);
+            engine.release(a);
+            log(a, false);
+        }
+        botTime = engine.getElapsed() + GameEngine.TICK_RATE / BOT;
+    }
+
+    /**
+     * Process an event from the queue.
+     * @param s event, w/ when it was queued
+     * @return false if the window is closing
+     */
+    private boolean handle(Stamped s)
+    {
+        AWTEvent e = s.getEvent();
+
+        if (e instanceof WindowEvent)
+        {
+            if (e.getID() == WindowEvent.WINDOW_CLOSING)
+                return false;
+            if (replay == null) {
+                engine.pause(true);
+                keys.clear();
+                log(null, true);
+            }
+        }
+
+        // keys are ignored while watching a replay
+        if (e instanceof KeyEvent && replay == null)
+        {
+            KeyEvent ke = (KeyEvent) e;
+            int key = ke.getKeyCode();
+            Action a = action(key);
+
+            if (a != null && ke.getID() == KeyEvent.KEY_RELEASED) {
+                keys.clear(key);
+                engine.release(a);
+                log(a, false);
+            }
+
+            // held keys repeat in the engine, not the OS
+            if (a != null && ke.getID() == KeyEvent.KEY_PRESSED
+                && !keys.get(key)) {
+                keys.set(key);
+                engine.press(a);
+                latency.record(System.nanoTime() - s.getTime());
+                lastInput = s.getTime();
+                log(a, true);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return time from key presses being queued to them
+     *         being applied to the game, in nanoseconds
+     */
+    public Histogram getInputLatency()
+    {
+        return latency;
+    }
+
+    /**
+     * @return time from key presses being queued to the first frame
+     *         showing them being presented, in nanoseconds, for the
+     *         last press before each frame
+     */
+    public Histogram getPresentLatency()
+    {
+        return shown;
+    }
+
+    /**
+     * @return time between the start of one frame
+     *         and the next, in nanoseconds
+     */
+    public Histogram getFrameTimes()
+    {
+        return frameTimes;
+    }
+
+    /**
+     * @return mean bytes allocated by the render thread per
+     *         frame, -1 if the JVM doesn't count them
+     */
+    public long getFrameAllocation()
+    {
+        if (MEMORY == null)
+            return -1;
+        return frames == 0 ? 0 : allocSum / frames;
+    }
+
+    /**
+     * @return most bytes allocated by the render thread
+     *         in a single frame, -1 if not counted
+     */
+    public long getMaxFrameAllocation()
+    {
+        return MEMORY == null ? -1 : allocMax;
     }
 
+    /**
+     * Hand the current game state over to the render thread.
+     */
+    private void publish()
+    {
+        handoff.back().capture(engine);
+        handoff.back().setInput(lastInput);
+        handoff.publish();
+        changes.getAndAccumulate(engine.changes(), (a, b) -> a | b);
+    }
+
+    /**
+     * Simulation loop, steps the game at a fixed rate and applies
+     * input as soon as it arrives, independent of rendering.
+     */
+    private void simulate()
+    {
+        Stamped e;
+
+        clock = System.nanoTime();
+        while (true)
+        {
+            advance();
+            if (bot != null)
+                autoplay();
+            publish();
+
+            // pieces checked for finesse in the meantime
+            finesse.collect(engine.getMetrics());
+
+            // wait for the next tick, but wake up for input
+            try {
+                e = queue.poll(TICK - lag, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException ex) {
+                System.err.println("Sleep failed!");
+                break;
+            }
+            if (e == null)
+                continue;
+
+            advance();
+            if (!handle(e))
+                break;
+
+            // present the result right away
+            if (EARLY && e.getEvent() instanceof KeyEvent) {
+                publish();
+                wake = true;
+                LockSupport.unpark(worker);
+            }
+        }
+
+        if (recorder != null)
+            stopRecording();
+        running = false;
+        LockSupport.unpark(worker);
+    }
+
+    /**
+     * Render loop, presents the latest snapshot at the configured
+     * framerate, or as soon as the simulation asks for it.
+     */
     @Override
     public void run()
     {
         createBufferStrategy(2);
         BufferStrategy buffer = getBufferStrategy();
 
-        long beforeTime = System.nanoTime();
-        long afterTime;
-        long deltaTime = 0;
-        long sleepTime;
-        long overSlept = 0;
         long nDelays = 0;
-
-        next();
-        while (true)
+        long nextHud = System.nanoTime();
+        long nextLog = nextHud + STATS;
+        while (running)
         {
-            // process events
-            while (!queue.isEmpty())
-            {
-                AWTEvent e = queue.remove();
-
-                if (e instanceof WindowEvent)
-                {
-                    if (e.getID() == WindowEvent.WINDOW_CLOSING) {
-                        return;
-                    } else {
-                        pause(true);
-                    }
-                }
-
-                if (e instanceof ActionEvent)
-                {
-                    Object o = e.getSource();
-
-                    if (o.equals(down)) {
-                        if (!this.piece.move(Direction.DOWN))
-                            this.lock.restart();
-                    }
-
-                    if (o.equals(lock)) {
-                        this.gameover = this.piece.place();
-                        if (this.gameover) {
-                            stop();
-                        } else {
-                            score(this.grid.clear());
-                            next();
-                        }
-                    }
-                }
+            long beforeTime = System.nanoTime();
+            long beforeBytes = DEBUG && MEMORY != null
+                ? MEMORY.getCurrentThreadAllocatedBytes() : 0;
+            wake = false;
+
+            FrameEvent event = null;
+            if (FrameEvent.TYPE.isEnabled()) {
+                event = new FrameEvent();
+                event.begin();
+            }
 
-                if (e instanceof KeyEvent)
-                {
-                    KeyEvent ke = (KeyEvent) e;
-                    input(ke.getKeyCode());
-                }
+            boolean log = STATS > 0 && beforeTime >= nextLog;
+            if (log || HUD && beforeTime >= nextHud) {
+                instrument(log);
+                if (log)
+                    nextLog = beforeTime + STATS;
+                nextHud = beforeTime + 500000000L;
             }
 
             // render screen
+            long renderTime = 0;
+            long presentTime = 0;
+            int retries = -1;
             do {
                 do {
+                    long t = System.nanoTime();
                     Graphics g = buffer.getDrawGraphics();
                     render(g);
                     g.dispose();
+                    renderTime += System.nanoTime() - t;
+                    retries++;
                 } while (buffer.contentsRestored());
+                long t = System.nanoTime();
                 buffer.show();
+                presentTime += System.nanoTime() - t;
             } while (buffer.contentsLost());
 
+            // a key press on screen for the first time
+            if (snap.getInput() != presented) {
+                presented = snap.getInput();
+                shown.record(System.nanoTime() - presented);
+            }
+
+            if (DEBUG && MEMORY != null) {
+                long b = MEMORY.getCurrentThreadAllocatedBytes() - beforeBytes;
+                allocSum += b;
+                allocMax = Math.max(allocMax, b);
+                frames++;
+            }
+
             // regulate framerate
-            afterTime = System.nanoTime();
-            deltaTime = afterTime - beforeTime;
-            sleepTime = (PERIOD - deltaTime) - overSlept;
-
-            if (sleepTime > 0) {
-                // kill time left in frame
-                try {
-                    Thread.sleep(sleepTime / 1000000L);
-                } catch (InterruptedException ex) {
-                    System.err.println("Sleep failed!");
-                    return;
-                }
-                overSlept = (System.nanoTime() - afterTime) - sleepTime;
-            } else {
+            long wait = beforeTime + PERIOD - System.nanoTime();
+            if (wait <= 0 && ++nDelays >= FPS/2) {
                 // hogging CPU, yield for a bit
-                overSlept = 0;
-                if (++nDelays >= FPS/2) {
-                    Thread.yield();
-                    nDelays = 0;
-                }
+                Thread.yield();
+                nDelays = 0;
             }
-            
-            if (!gameover && !paused)
-                elapsed += (deltaTime + sleepTime + overSlept) / 1000000L;
 
-            beforeTime = System.nanoTime();
-        }
-    }
+            // kill time left in frame
+            boolean slept = wait > 0;
+            while (wait > 0 && running && !wake)
+            {
+                LockSupport.parkNanos(wait);
+                wait = beforeTime + PERIOD - System.nanoTime();
+            }
 
-    @Override
-    public void actionPerformed(ActionEvent e)
-    {
-        queue.add(e);
+            frameTimes.record(System.nanoTime() - beforeTime);
+            if (event != null) {
+                event.render = renderTime;
+                event.present = presentTime;
+                event.sleepError = slept && !wake ? -wait : 0;
+                event.retries = retries;
+                event.commit();
+            }
+        }
     }
 
     @Override
     public void keyPressed(KeyEvent e) 
     {
-        queue.add(e);
+        queue.add(new Stamped(e));
     }
 
     @Override
     public void windowDeactivated(WindowEvent e) 
     {   
-        queue.add(e);
+        queue.add(new Stamped(e));
     }
 
     @Override
     public void windowIconified(WindowEvent e) 
     {
-        queue.add(e);
+        queue.add(new Stamped(e));
     }
 
     @Override
     public void windowLostFocus(WindowEvent e) 
     {
-        queue.add(e);
+        queue.add(new Stamped(e));
     }
 
     @Override
     public void windowClosing(WindowEvent e) 
     {
         try {
-            queue.add(e);
+            queue.add(new Stamped(e));
+            if (simulation.isAlive())
+                simulation.join();
             if (worker.isAlive())
                 worker.join();
+            if (DEBUG)
+                System.err.printf("Input latency: mean %.1f ms, p99 %.1f ms, max %.1f ms%n",
+                        latency.getMean() / 1e6, latency.percentile(99) / 1e6,
+                        latency.getMax() / 1e6);
+            if (DEBUG)
+                System.err.printf("Present latency: mean %.1f ms, p99 %.1f ms, max %.1f ms%n",
+                        shown.getMean() / 1e6, shown.percentile(99) / 1e6,
+                        shown.getMax() / 1e6);
+            if (DEBUG)
+                System.err.printf("Frame time: mean %.1f ms, p99 %.1f ms, max %.1f ms%n",
+                        frameTimes.getMean() / 1e6, frameTimes.percentile(99) / 1e6,
+                        frameTimes.getMax() / 1e6);
+            if (DEBUG && MEMORY != null)
+                System.err.printf("Allocation: mean %d B/frame, max %d B%n",
+                        getFrameAllocation(), getMaxFrameAllocation());
         } catch (InterruptedException ex) {
             System.err.println("Join failed!");
         } finally {
@@ -482,10 +965,13 @@ public class Main
         }
     }
 
-    /*** UNUSED EVENT HANDLERS ***/
-
     @Override
-    public void keyReleased(KeyEvent e) {}
+    public void keyReleased(KeyEvent e) 
+    {
+        queue.add(new Stamped(e));
+    }
+
+    /*** UNUSED EVENT HANDLERS ***/
 
     @Override
     public void keyTyped(KeyEvent e) {}
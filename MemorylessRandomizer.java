@@ -0,0 +1,39 @@
+import java.nio.ByteBuffer;
+
+/**
+ * Every kind is equally likely, every time.
+ */
+public class MemorylessRandomizer
+    extends Randomizer
+{
+    /**
+     * Create new MemorylessRandomizer.
+     * @param seed
+     */
+    public MemorylessRandomizer(long seed)
+    {
+        super(seed);
+    }
+
+    @Override
+    public Kind next()
+    {
+        return KINDS[1 + roll(7)];
+    }
+
+    @Override
+    protected int type()
+    {
+        return MEMORYLESS;
+    }
+
+    @Override
+    protected void save(ByteBuffer b)
+    {
+    }
+
+    @Override
+    protected void load(ByteBuffer b)
+    {
+    }
+}
@@ -0,0 +1,296 @@
+import java.nio.ByteBuffer;
+
+/**
+ * Pace of play: pieces per second, inputs (actions) per minute, keys per
+ * piece and lines per minute, over the whole game and over a rolling
+ * window of the last few seconds. Counts are kept per second of game
+ * time in small rings, so memory stays constant however long the game.
+ *
+ * The finesse rate is counted the same way, from the pieces checked by
+ * Finesse, which the owner of the engine has to run.
+ */
+public class Metrics
+{
+    /*** STATIC DATA ***/
+
+    // length of the rolling window, in seconds
+    public static final int WINDOW = 10;
+
+    private static final int SECOND = GameEngine.TICK_RATE;
+
+    /** Bytes taken by write(). */
+    public static final int BYTES = 6 * 8 + 5 * WINDOW * 4;
+
+    /*** INSTANCE VARIABLES ***/
+
+    private final int[] pieces = new int[WINDOW];
+    private final int[] inputs = new int[WINDOW];
+    private final int[] lines = new int[WINDOW];
+    private final int[] checked = new int[WINDOW];
+    private final int[] faults = new int[WINDOW];
+    private long now = 0;
+
+    private long totalPieces = 0;
+    private long totalInputs = 0;
+    private long totalLines = 0;
+    private long totalChecked = 0;
+    private long totalFaults = 0;
+
+    /*** METHODS ***/
+
+    /**
+     * Move the clock forward, emptying the seconds which
+     * fall out of the window.
+     * @param tick game time in ticks
+     */
+    public void advance(long tick)
+    {
+        long from = this.now / SECOND;
+        long to = tick / SECOND;
+        for (long s = from + 1; s <= to && s <= from + WINDOW; s++)
+        {
+            int i = (int) (s % WINDOW);
+            this.pieces[i] = 0;
+            this.inputs[i] = 0;
+            this.lines[i] = 0;
+            this.checked[i] = 0;
+            this.faults[i] = 0;
+        }
+        this.now = Math.max(this.now, tick);
+    }
+
+    /**
+     * Count a piece locked in place.
+     */
+    public void piece()
+    {
+        this.pieces[slot()]++;
+        this.totalPieces++;
+    }
+
+    /**
+     * Count a key pressed by the player.
+     */
+    public void input()
+    {
+        this.inputs[slot()]++;
+        this.totalInputs++;
+    }
+
+    /**
+     * Count lines cleared.
+     * @param n
+     */
+    public void lines(int n)
+    {
+        this.lines[slot()] += n;
+        this.totalLines += n;
+    }
+
+    /**
+     * Count a piece checked for finesse.
+     * @param ok true if it was placed w/ no more keys than needed
+     */
+    public void finesse(boolean ok)
+    {
+        int i = slot();
+        this.checked[i]++;
+        this.totalChecked++;
+        if (!ok) {
+            this.faults[i]++;
+            this.totalFaults++;
+        }
+    }
+
+    /**
+     * @return ring index of the current second
+     */
+    private int slot()
+    {
+        return (int) (this.now / SECOND % WINDOW);
+    }
+
+    /**
+     * @param ring per second counts
+     * @return sum over the window
+     */
+    private static int sum(int[] ring)
+    {
+        int n = 0;
+        for (int c : ring)
+            n += c;
+        return n;
+    }
+
+    /**
+     * @return ticks covered by the window so far
+     */
+    private long span()
+    {
+        long start = (this.now / SECOND - WINDOW + 1) * SECOND;
+        return this.now - Math.max(0, start);
+    }
+
+    /**
+     * @param n count
+     * @param ticks time it took
+     * @return count per second
+     */
+    private static double rate(long n, long ticks)
+    {
+        return ticks <= 0 ? 0 : (double) n * SECOND / ticks;
+    }
+
+    /**
+     * Write the counts.
+     * @param b buffer
+     */
+    public void write(ByteBuffer b)
+    {
+        b.putLong(this.now);
+        b.putLong(this.totalPieces);
+        b.putLong(this.totalInputs);
+        b.putLong(this.totalLines);
+        b.putLong(this.totalChecked);
+        b.putLong(this.totalFaults);
+        for (int i = 0; i < WINDOW; i++)
+        {
+            b.putInt(this.pieces[i]);
+            b.putInt(this.inputs[i]);
+            b.putInt(this.lines[i]);
+            b.putInt(this.checked[i]);
+            b.putInt(this.faults[i]);
+        }
+    }
+
+    /**
+     * Overwrite the counts w/ those written by write().
+     * @param b buffer
+     */
+    public void read(ByteBuffer b)
+    {
+        this.now = b.getLong();
+        this.totalPieces = b.getLong();
+        this.totalInputs = b.getLong();
+        this.totalLines = b.getLong();
+        this.totalChecked = b.getLong();
+        this.totalFaults = b.getLong();
+        for (int i = 0; i < WINDOW; i++)
+        {
+            this.pieces[i] = b.getInt();
+            this.inputs[i] = b.getInt();
+            this.lines[i] = b.getInt();
+            this.checked[i] = b.getInt();
+            this.faults[i] = b.getInt();
+        }
+    }
+
+    /**
+     * @return pieces per second over the whole game
+     */
+    public double getPps()
+    {
+        return rate(this.totalPieces, this.now);
+    }
+
+    /**
+     * @return inputs per minute over the whole game
+     */
+    public double getApm()
+    {
+        return 60 * rate(this.totalInputs, this.now);
+    }
+
+    /**
+     * @return inputs per piece over the whole game
+     */
+    public double getKpp()
+    {
+        return this.totalPieces == 0 ? 0 : (double) this.totalInputs / this.totalPieces;
+    }
+
+    /**
+     * @return lines per minute over the whole game
+     */
+    public double getLpm()
+    {
+        return 60 * rate(this.totalLines, this.now);
+    }
+
+    /**
+     * @return share of the pieces checked which were placed w/
+     *         finesse over the whole game, 0 if none were checked
+     */
+    public double getFinesse()
+    {
+        return finesse(this.totalChecked, this.totalFaults);
+    }
+
+    /**
+     * @param checked pieces checked
+     * @param faults pieces placed w/ more keys than needed
+     * @return share placed w/ finesse
+     */
+    private static double finesse(long checked, long faults)
+    {
+        return checked == 0 ? 0 : 1 - (double) faults / checked;
+    }
+
+    /**
+     * @return pieces per second over the window
+     */
+    public double getRecentPps()
+    {
+        return rate(sum(this.pieces), span());
+    }
+
+    /**
+     * @return inputs per minute over the window
+     */
+    public double getRecentApm()
+    {
+        return 60 * rate(sum(this.inputs), span());
+    }
+
+    /**
+     * @return inputs per piece over the window
+     */
+    public double getRecentKpp()
+    {
+        int p = sum(this.pieces);
+        return p == 0 ? 0 : (double) sum(this.inputs) / p;
+    }
+
+    /**
+     * @return lines per minute over the window
+     */
+    public double getRecentLpm()
+    {
+        return 60 * rate(sum(this.lines), span());
+    }
+
+    /**
+     * @return share of the pieces checked which were
+     *         placed w/ finesse over the window
+     */
+    public double getRecentFinesse()
+    {
+        return finesse(sum(this.checked), sum(this.faults));
+    }
+
+    /**
+     * @return number of pieces locked
+     */
+    public long getPieces()
+    {
+        return this.totalPieces;
+    }
+
+    /**
+     * @return number of keys pressed
+     */
+    public long getInputs()
+    {
+        return this.totalInputs;
+    }
+}
@@ -0,0 +1,303 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Counts the ways a sequence of pieces can be placed, like perft in
+ * chess engines: every distinct resting position of the first piece
+ * (see Bot.search(), which moves it w/ Piece.move(), rotate() and
+ * drop(), kicks and all), then every one of the second on each of the
+ * boards that leaves, and so on down to a depth. The number of boards
+ * at the bottom only depends on the rules, so it checks any change to
+ * Piece or Grid, and how fast they're counted is a benchmark.
+ *
+ * Pieces spawn and end the game as in GameEngine: one row down from
+ * where they appear, a blocked spawn or a piece locking entirely above
+ * the field counts nothing. Hold isn't used.
+ *
+ * e.g. java -cp jetris.jar Perft tsd TIOLJSZ 4
+ */
+public class Perft
+{
+    /*** STATIC DATA ***/
+
+    // standard positions, by name and then rows from the top down
+    private static final String[][] POSITIONS = {
+        { "empty" },
+        { "tsd",
+          "XXXX......",
+          "XXX...XXXX",
+          "XXXX.XXXXX" },
+        { "stack",
+          ".......X..",
+          "XX....XXX.",
+          "XXX..XXXXX",
+          "XX.XXXX.XX",
+          "XXXXXX.XXX",
+          ".XXXXXXXXX",
+          "XXXXX.XXXX",
+          "XXXX.XXXXX" },
+    };
+
+    /*** INSTANCE VARIABLES ***/
+
+    private final Kind[] sequence;
+
+    // one of each per depth, as a search is walked
+    // through while the deeper ones are run
+    private final Grid[] grids;
+    private final Bot[] bots;
+    // pieces to search w/ on grids[d], and to place on grids[d + 1]
+    private final Piece[][] spawns;
+    private final Piece[][] places;
+
+    /*** METHODS ***/
+
+    /**
+     * Create new Perft.
+     * @param sequence pieces to place, in order, which
+     *        is as deep as it can count
+     */
+    public Perft(Kind[] sequence)
+    {
+        int n = sequence.length;
+        this.sequence = sequence.clone();
+        this.grids = new Grid[n + 1];
+        this.bots = new Bot[n];
+        this.spawns = new Piece[n][8];
+        this.places = new Piece[n][8];
+
+        for (int d = 0; d <= n; d++)
+            this.grids[d] = new Grid();
+        for (int d = 0; d < n; d++)
+        {
+            this.bots[d] = new Bot(Heuristic.DEFAULT, null);
+            for (int k = 1; k < 8; k++)
+            {
+                this.spawns[d][k] = new Piece(Randomizer.KINDS[k], this.grids[d]);
+                this.places[d][k] = new Piece(Randomizer.KINDS[k], this.grids[d + 1]);
+            }
+        }
+    }
+
+    /**
+     * Build a board.
+     * @param rows from the top down, 'X' for occupied locations
+     * @return new grid
+     * @throws IllegalArgumentException for rows which don't fit
+     */
+    public static Grid board(String... rows)
+    {
+        if (rows.length > 20)
+            throw new IllegalArgumentException("More than 20 rows");
+
+        Grid g = new Grid();
+        for (int i = 0; i < rows.length; i++)
+        {
+            String r = rows[i];
+            if (r.length() != 10)
+                throw new IllegalArgumentException("Rows are 10 wide: " + r);
+            for (int x = 0; x < 10; x++)
+                if (r.charAt(x) == 'X')
+                    g.set(x, rows.length - 1 - i, Kind.I); // any kind will do
+        }
+        return g;
+    }
+
+    /**
+     * Look up a standard position, or build one.
+     * @param s name, or rows from the top down separated by '/'
+     * @return new grid
+     * @throws IllegalArgumentException for unknown names
+     */
+    public static Grid position(String s)
+    {
+        for (String[] p : POSITIONS)
+            if (p[0].equals(s))
+                return board(Arrays.copyOfRange(p, 1, p.length));
+        if (s.indexOf('/') < 0 && s.length() != 10)
+            throw new IllegalArgumentException("Unknown position: " + s);
+        return board(s.split("/"));
+    }
+
+    /**
+     * Parse a sequence of pieces.
+     * @param s letters, e.g. "TIOLJSZ"
+     * @return kinds
+     * @throws IllegalArgumentException for anything else
+     */
+    public static Kind[] sequence(String s)
+    {
+        Kind[] k = new Kind[s.length()];
+        for (int i = 0; i < k.length; i++)
+        {
+            k[i] = Kind.valueOf(String.valueOf(Character.toUpperCase(s.charAt(i))));
+            if (k[i].equals(Kind.NONE))
+                throw new IllegalArgumentException("Not a piece: " + s.charAt(i));
+        }
+        return k;
+    }
+
+    /**
+     * Count the boards left after placing the pieces.
+     * @param g board to start from, left as it is
+     * @param depth number of pieces, at most as many as in the sequence
+     * @return number of boards at that depth, 1 at depth 0
+     */
+    public long count(Grid g, int depth)
+    {
+        if (depth > this.sequence.length)
+            throw new IllegalArgumentException
+                ("Sequence is only " + this.sequence.length + " pieces");
+        this.grids[0].copy(g);
+        return walk(0, depth);
+    }
+
+    /**
+     * Count from a depth.
+     * @param d depth of grids[d]
+     * @param depth depth to count at
+     * @return number of boards
+     */
+    private long walk(int d, int depth)
+    {
+        if (d == depth)
+            return 1;
+
+        int k = this.sequence[d].ordinal();
+        Piece p = this.spawns[d][k];
+        p.reset();
+        if (p.collides())
+            return 0;
+        p.move(Direction.DOWN);
+
+        long n = 0;
+        int found = this.bots[d].search(this.grids[d], p);
+        for (int r = 0; r < found; r++)
+        {
+            // the last boards don't have to be made, only counted
+            if (d + 1 == depth)
+                n += lockout(d, r) ? 0 : 1;
+            else if (place(d, r))
+                n += walk(d + 1, depth);
+        }
+        return n;
+    }
+
+    /**
+     * @param d depth
+     * @param r index of a resting position, see Bot.search()
+     * @return true if the piece would lock entirely above the field
+     */
+    private boolean lockout(int d, int r)
+    {
+        Piece q = this.places[d][this.sequence[d].ordinal()];
+        this.bots[d].position(r, q);
+        return q.getBottom() > 19;
+    }
+
+    /**
+     * Set up grids[d + 1] w/ a placement on grids[d].
+     * @param d depth
+     * @param r index of a resting position, see Bot.search()
+     * @return false for a lock-out
+     */
+    private boolean place(int d, int r)
+    {
+        if (lockout(d, r))
+            return false;
+
+        Piece q = this.places[d][this.sequence[d].ordinal()];
+        this.grids[d + 1].copy(this.grids[d]);
+        q.place();
+        this.grids[d + 1].clear();
+        return true;
+    }
+
+    /**
+     * Count in parallel, one task per placement of the first piece.
+     * @param g board to start from, left as it is
+     * @param sequence pieces to place
+     * @param depth number of pieces, at least 1
+     * @param pool pool to count on
+     * @return number of boards below each placement of the first piece
+     * @throws InterruptedException
+     */
+    public static long[] divide(Grid g, Kind[] sequence, int depth, ForkJoinPool pool)
+        throws InterruptedException
+    {
+        // the first piece here, the rest in a Perft for each task
+        Perft root = new Perft(new Kind[] { sequence[0] });
+        Kind[] rest = Arrays.copyOfRange(sequence, 1, depth);
+        root.grids[0].copy(g);
+
+        Piece p = root.spawns[0][sequence[0].ordinal()];
+        p.reset();
+        if (p.collides())
+            return new long[0];
+        p.move(Direction.DOWN);
+
+        int found = root.bots[0].search(root.grids[0], p);
+        List<Callable<Long>> tasks = new ArrayList<>();
+        for (int r = 0; r < found; r++)
+        {
+            if (!root.place(0, r)) {
+                tasks.add(() -> 0L);
+                continue;
+            }
+            Grid child = new Grid();
+            child.copy(root.grids[1]);
+            tasks.add(() -> new Perft(rest).count(child, depth - 1));
+        }
+
+        long[] out = new long[found];
+        List<Future<Long>> results = pool.invokeAll(tasks);
+        for (int r = 0; r < found; r++)
+        {
+            try {
+                out[r] = results.get(r).get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Count to each depth in turn and time it, e.g.
+     * java -cp jetris.jar Perft empty TIOLJSZ 4 [threads]
+     * @param args position (see position()), sequence,
+     *        depth and number of threads
+     */
+    public static void main(String[] args)
+        throws InterruptedException
+    {
+        if (args.length < 3) {
+            System.err.println("Usage: Perft <position> <sequence> <depth> [threads]");
+            System.exit(2);
+        }
+
+        Grid g = position(args[0]);
+        Kind[] seq = sequence(args[1]);
+        int depth = Math.min(Integer.parseInt(args[2]), seq.length);
+        int threads = args.length > 3 ? Integer.parseInt(args[3])
+            : Runtime.getRuntime().availableProcessors();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+
+        for (int d = 1; d <= depth; d++)
+        {
+            long t = System.nanoTime();
+            long n = 0;
+            for (long c : divide(g, seq, d, pool))
+                n += c;
+            long ns = Math.max(1, System.nanoTime() - t);
+            System.out.printf("depth %d: %d boards, %d ms, %.0f boards/s%n",
+                    d, n, ns / 1000000L, n * 1e9 / ns);
+        }
+        pool.shutdown();
+    }
+}
@@ -73,17 +73,103 @@ public class Piece
         Color.RED
     };
 
+    /*
+     * Pre-computed forms, indexed by kind and rotation state, see
+     * the static initializer below. BOUNDS holds the minimum and
+     * maximum x and y of the blocks, MASKS holds one bitmask per
+     * row of the bounding box (bit 'x' set for a block at 'x').
+     */
+    private static final int[][][][] FORMS = new int[8][4][][];
+    private static final int[][][] BOUNDS = new int[8][4][];
+    private static final int[][][] MASKS = new int[8][4][];
+
+    static
+    {
+        for (int i = 0; i < 8; i++)
+        {
+            int w = size(i, true);
+            int h = size(i, false);
+            int[][] blocks = deepcopy(BLOCKS[i]);
+            for (int s = 0; s < 4; s++)
+            {
+                int[] b = new int[] { 9, 0, 9, 0 };
+                int[] m = new int[h];
+                for (int[] p : blocks)
+                {
+                    b[0] = Math.min(b[0], p[0]);
+                    b[1] = Math.max(b[1], p[0]);
+                    b[2] = Math.min(b[2], p[1]);
+                    b[3] = Math.max(b[3], p[1]);
+                    m[p[1]] |= 1 << p[0];
+                }
+                FORMS[i][s] = blocks;
+                BOUNDS[i][s] = b;
+                MASKS[i][s] = m;
+
+                // the O piece doesn't rotate
+                if (i != Kind.O.ordinal())
+                    blocks = rotate(blocks, w, h);
+                else
+                    blocks = deepcopy(blocks);
+            }
+        }
+    }
+
     /*** INSTANCE VARIABLES ***/
 
     private final Kind kind;
     private final Grid grid;
     private int[][] blocks;
-    private Color color;
     private Rectangle rect;
     private int state = 0;
 
     /*** METHODS ***/
 
+    /**
+     * Bounding box dimensions of a kind.
+     * @param i kind ordinal
+     * @param width true for the width, false for the height
+     * @return size in blocks
+     */
+    private static int size(int i, boolean width)
+    {
+        if (i == Kind.I.ordinal())
+            return 4;
+        if (i == Kind.O.ordinal())
+            return width ? 4 : 3;
+        return 3;
+    }
+
+    /**
+     * Rotate blocks clockwise (RIGHT) within their bounding box.
+     * 
+     * The static 'BLOCKS' array contains coordinates in the first quadrant,
+     * so when they're rotated around the origin the blocks end-up in another
+     * quadrant. This requires us to translate them back into the first quadrant,
+     * up by exactly the height of their bounding box. The alternatives are 
+     * either to use floating point numbers for coordinates (which can be messy
+     * due to inaccuracies); not using SRS (which is unacceptable [to me]); or
+     * translating the offset in 'rect' by the required amount instead of the
+     * blocks. Rotating LEFT is the inverse, so three rotations RIGHT give it.
+     * 
+     * If you're still confused, grab some pen and paper and walk through it.
+     * 
+     * @param blocks
+     * @param w bounding box width
+     * @param h bounding box height
+     * @return new rotated blocks
+     */
+    private static int[][] rotate(int[][] blocks, int w, int h)
+    {
+        int[][] r = new int[blocks.length][2];
+        for (int i = 0; i < blocks.length; i++)
+        {
+            r[i][0] = blocks[i][1];
+            r[i][1] = -blocks[i][0] + (h - 1);
+        }
+        return r;
+    }
+
     public static int[][] deepcopy(int[][] arr)
     {
         int[][] copy = new int[arr.length][];
@@ -102,22 +188,10 @@ public class Piece
         int i = k.ordinal();
         this.kind = k;
         this.grid = g;
-        this.blocks = deepcopy(BLOCKS[i]);
-        this.color = COLORS[i];
+        this.blocks = FORMS[i][0];
         
-        int x, y, w, h;
-        x = 3;
-        y = 19;
-        w = 3;
-        h = 3;
-        if (k.equals(Kind.I)) {
-            y = 18;
-            w = 4;
-            h = 4;
-        } else if (k.equals(Kind.O)) {
-            w = 4;
-        }
-        this.rect = new Rectangle(x, y, w, h);
+        int y = k.equals(Kind.I) ? 18 : 19;
+        this.rect = new Rectangle(3, y, size(i, true), size(i, false));
     }
 
     /**
@@ -125,16 +199,69 @@ public class Piece
      */
     public boolean collides()
     {
-        for (int[] p : this.blocks)
+        return collides(this.rect.x, this.rect.y, this.state);
+    }
+
+    /**
+     * Test a prospective position against the grid.
+     * @param x horizontal offset of the bounding box
+     * @param y vertical offset of the bounding box
+     * @param s rotation state
+     * @return true if the piece would collide w/ anything
+     */
+    private boolean collides(int x, int y, int s)
+    {
+        int i = this.kind.ordinal();
+        int[] b = BOUNDS[i][s];
+        if (x + b[0] < 0 || x + b[1] > 9 || y + b[2] < 0)
+            return true;
+
+        int[] m = MASKS[i][s];
+        for (int dy = b[2]; dy <= b[3]; dy++)
         {
-            int x = p[0] + this.rect.x;
-            int y = p[1] + this.rect.y;
-            if (x < 0 || x > 9 || y < 0 || this.grid.get(x, y))
+            int r = (x < 0 ? m[dy] >>> -x : m[dy] << x);
+            if ((this.grid.row(y + dy) & r) != 0)
                 return true;
         }
         return false;
     }
 
+    /**
+     * Move the piece back to where it spawns, in its spawn state,
+     * without testing for collisions (see collides()).
+     */
+    public void reset()
+    {
+        this.rect.setLocation(3, this.kind.equals(Kind.I) ? 18 : 19);
+        this.state = 0;
+        this.blocks = FORMS[this.kind.ordinal()][0];
+    }
+
+    /**
+     * Get the occupancy mask of the piece in a row of the grid.
+     * @param y
+     * @return bit 'x' is set if the piece covers location (x, y)
+     */
+    public int row(int y)
+    {
+        int i = this.kind.ordinal();
+        int[] b = BOUNDS[i][this.state];
+        int dy = y - this.rect.y;
+        if (dy < b[2] || dy > b[3])
+            return 0;
+
+        int m = MASKS[i][this.state][dy];
+        return this.rect.x < 0 ? m >>> -this.rect.x : m << this.rect.x;
+    }
+
+    /**
+     * @return lowest row of the grid covered by the piece
+     */
+    public int getBottom()
+    {
+        return this.rect.y + BOUNDS[this.kind.ordinal()][this.state][2];
+    }
+
     /**
      * Internal movement helper.
      * @param dx
@@ -143,11 +270,9 @@ public class Piece
      */
     private boolean _move(int dx, int dy)
     {
-       rect.translate(dx, dy);
-       if (collides()) {
-           rect.translate(-dx, -dy);
+       if (collides(rect.x + dx, rect.y + dy, this.state))
            return false;
-       }
+       rect.translate(dx, dy);
        return true;
     }
 
@@ -161,52 +286,6 @@ public class Piece
         return _move(d.dx, d.dy);
     }
 
-    /**
-     * Internal rotation helper.
-     * 
-     * The static 'BLOCKS' array contains coordinates in the first quadrant,
-     * so when they're rotated around the origin the blocks end-up in another
-     * quadrant. This requires us to translate them back into the first quadrant,
-     * up or to the right depending on the rotation, by exactly the size of their 
-     * bounding boxes. The alternatives are either to use floating point numbers
-     * for coordinates (which can be messy due to inaccuracies); not using SRS
-     * (which is unacceptable [to me]); or translating the offset in 'rect' by the
-     * required amount instead of the blocks.
-     * 
-     * If you're still confused, grab some pen and paper and walk through it.
-     *  
-     * @param d direction, guaranteed to be LEFT or RIGHT
-     */
-    private void _rotate(Direction d)
-    {
-        int rc, xc, yc;
-        if (d.equals(Direction.LEFT)) {
-            rc = 1;
-            xc = 1;
-            yc = 0;
-        } else {
-            rc = -1;
-            xc = 0;
-            yc = 1;
-        }
-        
-        // rotate & translate
-        for (int[] p : this.blocks)
-        {
-            int x = p[0];
-            int y = p[1];
-            p[0] = -rc * y + xc * (rect.width - 1);
-            p[1] =  rc * x + yc * (rect.height - 1);
-        }
-
-        // update state
-        this.state -= rc;
-        if (this.state < 0)
-            this.state = 3;
-        if (this.state > 3)
-            this.state = 0;
-    }
-
     /**
      * Try and rotate the piece.
      * @param d direction, may only be LEFT or RIGHT
@@ -222,24 +301,26 @@ public class Piece
             throw new IllegalArgumentException
                 ("May only rotate LEFT or RIGHT");
 
-
-        // try rotation
-        _rotate(d);
+        // prospective state
+        int ind = (d.equals(Direction.LEFT) ? 0 : 1);
+        int s = (this.state + (ind == 0 ? 3 : 1)) & 3;
 
         // test kicks
-        int ind = (d.equals(Direction.LEFT) ? 0 : 1);
         int[][] kick;
         if (this.kind.equals(Kind.I))
-            kick = KICKS1[ind][state];
+            kick = KICKS1[ind][s];
         else
-            kick = KICKS2[ind][state];
+            kick = KICKS2[ind][s];
 
         for (int[] p : kick)
-            if (_move(p[0], p[1]))
-                    return true;
-
-        // undo rotation
-        _rotate(d.inverse());
+        {
+            if (!collides(rect.x + p[0], rect.y + p[1], s)) {
+                rect.translate(p[0], p[1]);
+                this.state = s;
+                this.blocks = FORMS[this.kind.ordinal()][s];
+                return true;
+            }
+        }
         return false;
     }
 
@@ -262,6 +343,11 @@ public class Piece
 
     /**
      * Internal drop helper.
+     * 
+     * The grid keeps track of the surface height of each column, so
+     * as long as the piece is above the surface this is four lookups.
+     * Only a piece tucked under an overhang has to search downwards.
+     * 
      * @return vertical drop distance
      */
     private int _drop()
@@ -273,10 +359,12 @@ public class Piece
             int y = p[1] + this.rect.y;
 
             // find highest block below 'y'
-            int top = 0;
-            for (int i = 0; i < y; i++)
-                if (this.grid.get(x, i))
-                    top = i + 1;
+            int top = this.grid.height(x);
+            if (top > y) {
+                top = y;
+                while (top > 0 && !this.grid.get(x, top - 1))
+                    top--;
+            }
 
             // find shortest distance
             off = Math.min(off, y - top);
@@ -284,6 +372,14 @@ public class Piece
         return off;
     }
 
+    /**
+     * @return hard drop distance, without moving the piece
+     */
+    public int distance()
+    {
+        return _drop();
+    }
+
     /**
      * Hard drop piece down, the caller
      * must then place it on the board.
@@ -304,19 +400,67 @@ public class Piece
         return this.kind;
     }
 
+    /**
+     * @return horizontal offset of the bounding box
+     */
+    public int getX()
+    {
+        return this.rect.x;
+    }
+
+    /**
+     * @return vertical offset of the bounding box
+     */
+    public int getY()
+    {
+        return this.rect.y;
+    }
+
+    /**
+     * @return rotation state, 0 being spawn and
+     *         increasing clockwise (RIGHT)
+     */
+    public int getState()
+    {
+        return this.state;
+    }
+
+    /**
+     * Put the piece at an arbitrary position, without
+     * testing for collisions (see collides()).
+     * @param x horizontal offset of the bounding box
+     * @param y vertical offset of the bounding box
+     * @param s rotation state
+     */
+    public void setPosition(int x, int y, int s)
+    {
+        this.rect.setLocation(x, y);
+        this.state = s & 3;
+        this.blocks = FORMS[this.kind.ordinal()][this.state];
+    }
+
     /**
      * Internal draw helper.
      * @param g graphics context
+     * @param dy vertical offset in blocks
+     * @param ghost true to draw the ghost sprites
      */
-    private void _draw(Graphics g)
+    private void _draw(Graphics g, int dy, boolean ghost)
     {
         int sz = Facade.SIZE;
-        g.setColor(this.color);
+        int i = this.kind.ordinal();
         for (int[] p : this.blocks)
         {
             int x = (p[0] + this.rect.x) * sz;
-            int y = (21 - p[1] - this.rect.y) * sz;
-            Facade.block(g, x, y, sz);
+            int y = (21 - p[1] - this.rect.y - dy) * sz;
+
+            // whatever is drawn here must be repaired next frame
+            this.grid.damage(p[0] + this.rect.x, p[1] + this.rect.y + dy);
+
+            if (ghost)
+                Facade.ghost(g, i, x, y, sz);
+            else
+                Facade.block(g, i, x, y, sz);
         }
     }
 
@@ -327,15 +471,9 @@ public class Piece
     public void draw(Graphics g)
     {
         // draw ghost
-        int d = _drop();
-        int c = this.color.getRGB();
-        this.color = new Color(c & 0x4BFFFFFF, true);
-        _move(0, -d);
-        _draw(g);
-        _move(0, d);
-        this.color = new Color(c);
+        _draw(g, -_drop(), true);
 
         // draw self
-        _draw(g);
+        _draw(g, 0, false);
     }
 };
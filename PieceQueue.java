@@ -0,0 +1,141 @@
+import java.nio.ByteBuffer;
+
+/**
+ * Upcoming pieces, kept in a fixed-size ring buffer which is topped
+ * up from a randomizer so that the preview is always available.
+ */
+public class PieceQueue
+{
+    /*** STATIC DATA ***/
+
+    // must be a power of two, larger than any preview
+    private static final int CAPACITY = 32;
+    private static final int MASK = CAPACITY - 1;
+
+    /** Most bytes taken by write(). */
+    public static final int BYTES = 2 + CAPACITY + Randomizer.BYTES;
+
+    /*** INSTANCE VARIABLES ***/
+
+    private final Kind[] ring = new Kind[CAPACITY];
+    private final Randomizer random;
+    private final int preview;
+    private int head = 0;
+    private int size = 0;
+
+    /*** METHODS ***/
+
+    /**
+     * Create new PieceQueue.
+     * @param r randomizer
+     * @param preview number of pieces which can be peeked at
+     * @throws IllegalArgumentException if the preview doesn't fit
+     */
+    public PieceQueue(Randomizer r, int preview)
+    {
+        if (preview < 0 || preview > CAPACITY / 2)
+            throw new IllegalArgumentException
+                ("Preview must be between 0 and " + CAPACITY / 2);
+
+        this.random = r;
+        this.preview = preview;
+        fill();
+    }
+
+    /**
+     * Create new PieceQueue w/o filling it, see read().
+     * @param r randomizer
+     * @param preview number of pieces which can be peeked at
+     * @param size number of pieces to be read
+     */
+    private PieceQueue(Randomizer r, int preview, int size)
+    {
+        this.random = r;
+        this.preview = preview;
+        this.size = size;
+    }
+
+    /**
+     * Recreate a queue written by write().
+     * @param b buffer
+     * @return new queue
+     */
+    public static PieceQueue read(ByteBuffer b)
+    {
+        int preview = b.get();
+        int size = b.get();
+        PieceQueue q = new PieceQueue(Randomizer.read(b), preview, size);
+        for (int i = 0; i < size; i++)
+            q.ring[i] = Randomizer.KINDS[b.get()];
+        return q;
+    }
+
+    /**
+     * Write the queued pieces and the randomizer.
+     * @param b buffer
+     */
+    public void write(ByteBuffer b)
+    {
+        b.put((byte) this.preview);
+        b.put((byte) this.size);
+        this.random.write(b);
+        for (int i = 0; i < this.size; i++)
+            b.put((byte) this.ring[(this.head + i) & MASK].ordinal());
+    }
+
+    /**
+     * Top up the queue to one more than the preview.
+     */
+    private void fill()
+    {
+        while (this.size <= this.preview)
+        {
+            this.ring[(this.head + this.size) & MASK] = this.random.next();
+            this.size++;
+        }
+    }
+
+    /**
+     * Take the next piece off the front.
+     * @return kind
+     */
+    public Kind next()
+    {
+        Kind k = this.ring[this.head];
+        this.head = (this.head + 1) & MASK;
+        this.size--;
+        fill();
+        return k;
+    }
+
+    /**
+     * Put a piece back at the front, e.g. when swapping w/ hold.
+     * @param k
+     */
+    public void push(Kind k)
+    {
+        this.head = (this.head - 1) & MASK;
+        this.ring[this.head] = k;
+        this.size++;
+    }
+
+    /**
+     * @param i index, 0 being the next piece
+     * @return upcoming kind
+     * @throws IndexOutOfBoundsException if 'i' is beyond the preview
+     */
+    public Kind peek(int i)
+    {
+        if (i < 0 || i >= this.preview)
+            throw new IndexOutOfBoundsException(i);
+        return this.ring[(this.head + i) & MASK];
+    }
+
+    /**
+     * @return number of pieces which can be peeked at
+     */
+    public int getPreview()
+    {
+        return this.preview;
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * Where a piece can come to rest, and the inputs which take it there
+ * from where it spawned (see Bot).
+ */
+public class Placement
+{
+    /*** INSTANCE VARIABLES ***/
+
+    private final int x;
+    private final int y;
+    private final int state;
+    private final Action[] actions;
+    private double score = 0;
+
+    /*** METHODS ***/
+
+    /**
+     * Create new Placement.
+     * @param x horizontal offset of the bounding box
+     * @param y vertical offset of the bounding box
+     * @param state rotation state
+     * @param actions inputs leading there, ending in a HARD_DROP
+     */
+    public Placement(int x, int y, int state, Action[] actions)
+    {
+        this.x = x;
+        this.y = y;
+        this.state = state;
+        this.actions = actions;
+    }
+
+    /**
+     * @return horizontal offset of the bounding box
+     */
+    public int getX()
+    {
+        return this.x;
+    }
+
+    /**
+     * @return vertical offset of the bounding box
+     */
+    public int getY()
+    {
+        return this.y;
+    }
+
+    /**
+     * @return rotation state
+     */
+    public int getState()
+    {
+        return this.state;
+    }
+
+    /**
+     * @return inputs leading there, ending in a HARD_DROP
+     */
+    public Action[] getActions()
+    {
+        return this.actions;
+    }
+
+    /**
+     * @return score of the resulting board, see Heuristic
+     */
+    public double getScore()
+    {
+        return this.score;
+    }
+
+    /**
+     * @param s score of the resulting board
+     */
+    public void setScore(double s)
+    {
+        this.score = s;
+    }
+}
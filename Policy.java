@@ -0,0 +1,27 @@
+/**
+ * Something which can play the game in place of the keyboard.
+ */
+public interface Policy
+{
+    /**
+     * Decide what to do w/ the falling piece.
+     * @param e game, left as it is
+     * @return inputs to make in order, ending w/ the piece placed,
+     *         null if there's nothing to do
+     */
+    Action[] plan(GameEngine e);
+
+    /**
+     * Decide what to do w/ the falling piece, and do it.
+     * @param e game
+     * @return inputs made, null if there was nothing to do
+     */
+    default Action[] play(GameEngine e)
+    {
+        Action[] a = plan(e);
+        if (a != null)
+            for (Action x : a)
+                e.input(x);
+        return a;
+    }
+}
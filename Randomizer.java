@@ -0,0 +1,141 @@
+import java.nio.ByteBuffer;
+
+/**
+ * Source of the piece sequence. Each randomizer carries its own
+ * generator state (SplitMix64), so a seed fully determines the
+ * sequence regardless of the JVM or anything else using randomness.
+ */
+public abstract class Randomizer
+{
+    /*** STATIC DATA ***/
+
+    // values() clones the array on every call
+    protected static final Kind[] KINDS = Kind.values();
+
+    // types for write()
+    protected static final int MEMORYLESS = 0;
+    protected static final int CLASSIC = 1;
+    protected static final int BAG = 2;
+
+    /** Most bytes taken by write(). */
+    public static final int BYTES = 1 + 8 + 2 + 7 * 2;
+
+    /*** INSTANCE VARIABLES ***/
+
+    private long state;
+
+    /*** METHODS ***/
+
+    /**
+     * Create a randomizer by name.
+     * @param name one of "7bag", "14bag", "classic" or "random"
+     * @param seed
+     * @return new randomizer
+     * @throws IllegalArgumentException for unknown names
+     */
+    public static Randomizer create(String name, long seed)
+    {
+        switch (name)
+        {
+            case "7bag":
+                return new BagRandomizer(1, seed);
+            case "14bag":
+                return new BagRandomizer(2, seed);
+            case "classic":
+                return new ClassicRandomizer(seed);
+            case "random":
+                return new MemorylessRandomizer(seed);
+        }
+        throw new IllegalArgumentException
+            ("Unknown randomizer: " + name);
+    }
+
+    /**
+     * Recreate a randomizer written by write(), which continues
+     * the sequence from where the original was at that point.
+     * @param b buffer
+     * @return new randomizer
+     * @throws IllegalArgumentException for unknown types
+     */
+    public static Randomizer read(ByteBuffer b)
+    {
+        int type = b.get();
+        long state = b.getLong();
+
+        Randomizer r;
+        switch (type)
+        {
+            case MEMORYLESS:
+                r = new MemorylessRandomizer(0);
+                break;
+            case CLASSIC:
+                r = new ClassicRandomizer(0);
+                break;
+            case BAG:
+                r = new BagRandomizer(b.get(), 0);
+                break;
+            default:
+                throw new IllegalArgumentException
+                    ("Unknown randomizer type: " + type);
+        }
+        r.state = state;
+        r.load(b);
+        return r;
+    }
+
+    /**
+     * Write the type and generator state, followed by save().
+     * @param b buffer
+     */
+    public void write(ByteBuffer b)
+    {
+        b.put((byte) type());
+        b.putLong(this.state);
+        save(b);
+    }
+
+    /**
+     * Create new Randomizer.
+     * @param seed
+     */
+    protected Randomizer(long seed)
+    {
+        this.state = seed;
+    }
+
+    /**
+     * Roll a uniformly distributed number.
+     * @param n bound, must be positive
+     * @return number in [0, n)
+     */
+    protected int roll(int n)
+    {
+        long z = (this.state += 0x9E3779B97F4A7C15L);
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        z = z ^ (z >>> 31);
+        return (int) (((z >>> 32) * n) >>> 32);
+    }
+
+    /**
+     * @return next kind in the sequence, never NONE
+     */
+    public abstract Kind next();
+
+    /**
+     * @return one of the type constants, see read()
+     */
+    protected abstract int type();
+
+    /**
+     * Write the state kept by a subclass.
+     * @param b buffer
+     */
+    protected abstract void save(ByteBuffer b);
+
+    /**
+     * Restore the state written by save().
+     * @param b buffer
+     */
+    protected abstract void load(ByteBuffer b);
+}
@@ -0,0 +1,101 @@
+import java.awt.Graphics;
+
+/**
+ * A label followed by a number, e.g. "SCORE: 1200", kept in a
+ * reusable char buffer which is only reformatted when the value
+ * changes, so drawing it every frame doesn't allocate.
+ */
+public class Readout
+{
+    /*** INSTANCE VARIABLES ***/
+
+    private final char[] text;
+    private final int prefix;
+    private final int decimals;
+    private int length;
+    private long value;
+
+    /*** METHODS ***/
+
+    /**
+     * Create new Readout.
+     * @param label text in front of the number
+     * @param decimals number of digits after the decimal point,
+     *        e.g. 3 shows 12345 as "12.345"
+     */
+    public Readout(String label, int decimals)
+    {
+        this.prefix = label.length();
+        this.decimals = decimals;
+        this.text = new char[this.prefix + 21];
+        label.getChars(0, this.prefix, this.text, 0);
+        this.value = 1;
+        set(0);
+    }
+
+    /**
+     * Create new Readout of whole numbers.
+     * @param label text in front of the number
+     */
+    public Readout(String label)
+    {
+        this(label, 0);
+    }
+
+    /**
+     * Change the number shown.
+     * @param v non-negative value
+     */
+    public void set(long v)
+    {
+        if (v == this.value)
+            return;
+        this.value = v;
+
+        // count digits, at least one before the decimal point
+        int n = 1;
+        for (long t = v / 10; t > 0; t /= 10)
+            n++;
+        n = Math.max(n, this.decimals + 1);
+        if (this.decimals > 0)
+            n++;
+
+        // fill in backwards
+        int i = this.prefix + n;
+        this.length = i;
+        for (int d = 0; i > this.prefix; d++)
+        {
+            if (this.decimals > 0 && d == this.decimals) {
+                this.text[--i] = '.';
+                continue;
+            }
+            this.text[--i] = (char) ('0' + v % 10);
+            v /= 10;
+        }
+    }
+
+    /**
+     * @return number of characters shown
+     */
+    public int length()
+    {
+        return this.length;
+    }
+
+    /**
+     * Draw the text.
+     * @param g graphics context
+     * @param x horizontal offset
+     * @param y baseline
+     */
+    public void draw(Graphics g, int x, int y)
+    {
+        g.drawChars(this.text, 0, this.length, x, y);
+    }
+
+    @Override
+    public String toString()
+    {
+        return new String(this.text, 0, this.length);
+    }
+}
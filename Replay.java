@@ -0,0 +1,274 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+/**
+ * A recorded game, played back by re-simulating it through the engine.
+ *
+ * A replay file holds a header w/ the settings the game was started
+ * with, followed by one record per call to press(), release() or
+ * pause(true) on the engine. Each record is a code byte and the ticks
+ * since the previous one as a varint, so most take two bytes. The last
+ * record is END, followed by the final score and lines as a footer.
+ *
+ *     header:  magic, version, randomizer name, seed,
+ *              preview, das, arr, sdf
+ *     record:  code (action ordinal, | RELEASE), delta ticks
+ *     footer:  END, delta ticks, score, lines
+ */
+public class Replay
+{
+    /*** STATIC DATA ***/
+
+    public static final int MAGIC = 0x4A545250; // "JTRP"
+    public static final byte VERSION = 1;
+
+    // record codes besides action ordinals
+    public static final int RELEASE = 0x80;
+    public static final int SUSPEND = 0x7E;
+    public static final int END = 0x7F;
+    private static final int EOF = -1;
+
+    private static final Action[] ACTIONS = Action.values();
+
+    /*** INSTANCE VARIABLES ***/
+
+    private final String randomizer;
+    private final long seed;
+    private final int preview;
+    private final int das;
+    private final int arr;
+    private final int sdf;
+
+    private final ByteBuffer data;
+    private int code = EOF;
+    private long next = 0;
+    private long now = 0;
+    private int score = -1;
+    private int lines = -1;
+
+    /*** METHODS ***/
+
+    /**
+     * Write a non-negative number in as few bytes as it takes,
+     * seven bits at a time, low bits first.
+     * @param b buffer
+     * @param v
+     */
+    public static void putVarint(ByteBuffer b, long v)
+    {
+        while ((v & ~0x7FL) != 0)
+        {
+            b.put((byte) (v | 0x80));
+            v >>>= 7;
+        }
+        b.put((byte) v);
+    }
+
+    /**
+     * Read a number written by putVarint().
+     * @param b buffer
+     * @return the number
+     */
+    public static long getVarint(ByteBuffer b)
+    {
+        long v = 0;
+        for (int s = 0; ; s += 7)
+        {
+            byte x = b.get();
+            v |= (long) (x & 0x7F) << s;
+            if (x >= 0)
+                return v;
+        }
+    }
+
+    /**
+     * Load a replay file.
+     * @param p
+     * @return replay, ready to start()
+     * @throws IOException if it can't be read or isn't a replay
+     */
+    public static Replay read(Path p)
+        throws IOException
+    {
+        try (FileChannel c = FileChannel.open(p)) {
+            ByteBuffer b = ByteBuffer.allocate((int) c.size());
+            while (b.hasRemaining() && c.read(b) >= 0);
+            b.flip();
+            return new Replay(b);
+        }
+    }
+
+    /**
+     * Create new Replay.
+     * @param b contents of a replay file
+     * @throws IOException if it isn't a replay
+     */
+    private Replay(ByteBuffer b)
+        throws IOException
+    {
+        try {
+            if (b.getInt() != MAGIC || b.get() != VERSION)
+                throw new IOException("Not a replay, or an unknown version");
+
+            byte[] name = new byte[b.get()];
+            b.get(name);
+            this.randomizer = new String(name, StandardCharsets.US_ASCII);
+            this.seed = b.getLong();
+            this.preview = (int) getVarint(b);
+            this.das = (int) getVarint(b);
+            this.arr = (int) getVarint(b);
+            this.sdf = (int) getVarint(b);
+        } catch (BufferUnderflowException ex) {
+            throw new IOException("Truncated replay header");
+        }
+        this.data = b;
+    }
+
+    /**
+     * Read the next record, and the footer after END. A replay cut
+     * short, e.g. by a crash, simply ends w/o a footer.
+     */
+    private void fetch()
+    {
+        try {
+            int c = this.data.get() & 0xFF;
+            this.next += getVarint(this.data);
+            if (c == END) {
+                this.score = this.data.getInt();
+                this.lines = this.data.getInt();
+            }
+            this.code = c;
+        } catch (BufferUnderflowException ex) {
+            this.code = EOF;
+        }
+    }
+
+    /**
+     * Set up a game to play the replay back on.
+     * @return new engine in the state the recording started in
+     */
+    public GameEngine start()
+    {
+        GameEngine e = new GameEngine(
+                Randomizer.create(this.randomizer, this.seed), this.preview);
+        e.setHandling(this.das, this.arr, this.sdf);
+        fetch();
+        return e;
+    }
+
+    /**
+     * Advance a game started by start(), applying the
+     * recorded input which falls within that time.
+     * @param e
+     * @param ticks number of ticks to advance by
+     */
+    public void advance(GameEngine e, long ticks)
+    {
+        long target = this.now + ticks;
+        while (this.code != EOF && this.code != END && this.next <= target)
+        {
+            e.step(this.next - this.now);
+            this.now = this.next;
+
+            if (this.code == SUSPEND)
+                e.pause(true);
+            else if ((this.code & RELEASE) != 0)
+                e.release(ACTIONS[this.code & ~RELEASE]);
+            else
+                e.press(ACTIONS[this.code]);
+            fetch();
+        }
+
+        // never run past the end
+        if (this.code == END)
+            target = Math.min(target, this.next);
+        if (target > this.now) {
+            e.step(target - this.now);
+            this.now = target;
+        }
+    }
+
+    /**
+     * @return true once every record has been applied
+     */
+    public boolean isDone()
+    {
+        return this.code == EOF || (this.code == END && this.now >= this.next);
+    }
+
+    /**
+     * Compare a game played back to the end w/ the recorded result.
+     * @param e
+     * @return true if the footer is present and matches
+     */
+    public boolean verify(GameEngine e)
+    {
+        return this.code == END
+            && e.getScore() == this.score
+            && e.getLines() == this.lines;
+    }
+
+    /**
+     * @return recorded final score, -1 w/o a footer
+     */
+    public int getScore()
+    {
+        return this.score;
+    }
+
+    /**
+     * @return recorded number of lines, -1 w/o a footer
+     */
+    public int getLines()
+    {
+        return this.lines;
+    }
+
+    /**
+     * Play replays back as fast as possible and check their results,
+     * e.g. java -cp jetris.jar Replay replays/
+     * @param args replay files, or directories of them
+     */
+    public static void main(String[] args)
+    {
+        int n = 0;
+        int failed = 0;
+        long t = System.nanoTime();
+        for (String arg : args)
+        {
+            File f = new File(arg);
+            File[] files = f.isDirectory()
+                ? f.listFiles((d, name) -> name.endsWith(".jtr"))
+                : new File[] { f };
+
+            for (File file : files)
+            {
+                n++;
+                try {
+                    Replay r = read(file.toPath());
+                    GameEngine e = r.start();
+                    r.advance(e, Long.MAX_VALUE / 2);
+                    boolean ok = r.verify(e);
+                    if (!ok)
+                        failed++;
+                    System.out.printf("%s: %s, score %d, lines %d%n", file,
+                            ok ? "OK" : r.getScore() < 0 ? "NO FOOTER" : "MISMATCH",
+                            e.getScore(), e.getLines());
+                } catch (IOException ex) {
+                    failed++;
+                    System.out.printf("%s: %s%n", file, ex.getMessage());
+                }
+            }
+        }
+
+        long ms = (System.nanoTime() - t) / 1000000L;
+        System.out.printf("%d replays, %d failed, %d ms%n", n, failed, ms);
+        if (failed > 0)
+            System.exit(1);
+    }
+}
@@ -0,0 +1,144 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Records a game as it's played, see Replay for the format. Records
+ * are gathered in a direct buffer and written out once it fills up,
+ * so recording doesn't touch the disk on every key press.
+ */
+public class ReplayWriter
+    implements AutoCloseable
+{
+    /*** INSTANCE VARIABLES ***/
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(8192);
+    private long tick = 0;
+
+    /*** METHODS ***/
+
+    /**
+     * Create new ReplayWriter, and write the header.
+     * @param p file to write, replaced if it exists
+     * @param randomizer name of the randomizer, see Randomizer.create()
+     * @param seed randomizer seed
+     * @param preview number of upcoming pieces
+     * @param das see GameEngine.setHandling()
+     * @param arr see GameEngine.setHandling()
+     * @param sdf see GameEngine.setHandling()
+     * @throws IOException
+     */
+    public ReplayWriter(Path p, String randomizer, long seed,
+            int preview, int das, int arr, int sdf)
+        throws IOException
+    {
+        this.channel = FileChannel.open(p, CREATE, TRUNCATE_EXISTING, WRITE);
+
+        byte[] name = randomizer.getBytes(StandardCharsets.US_ASCII);
+        this.buffer.putInt(Replay.MAGIC);
+        this.buffer.put(Replay.VERSION);
+        this.buffer.put((byte) name.length);
+        this.buffer.put(name);
+        this.buffer.putLong(seed);
+        Replay.putVarint(this.buffer, preview);
+        Replay.putVarint(this.buffer, das);
+        Replay.putVarint(this.buffer, arr);
+        Replay.putVarint(this.buffer, sdf);
+    }
+
+    /**
+     * Append a record.
+     * @param tick game time, never less than the previous record's
+     * @param code see Replay
+     * @throws IOException
+     */
+    private void record(long tick, int code)
+        throws IOException
+    {
+        if (this.buffer.remaining() < 24)
+            flush();
+
+        this.buffer.put((byte) code);
+        Replay.putVarint(this.buffer, tick - this.tick);
+        this.tick = tick;
+    }
+
+    /**
+     * Record GameEngine.press().
+     * @param tick game time
+     * @param a
+     * @throws IOException
+     */
+    public void press(long tick, Action a)
+        throws IOException
+    {
+        record(tick, a.ordinal());
+    }
+
+    /**
+     * Record GameEngine.release().
+     * @param tick game time
+     * @param a
+     * @throws IOException
+     */
+    public void release(long tick, Action a)
+        throws IOException
+    {
+        record(tick, a.ordinal() | Replay.RELEASE);
+    }
+
+    /**
+     * Record GameEngine.pause(true).
+     * @param tick game time
+     * @throws IOException
+     */
+    public void suspend(long tick)
+        throws IOException
+    {
+        record(tick, Replay.SUSPEND);
+    }
+
+    /**
+     * Record the end of the game, and the result to verify against.
+     * @param tick game time
+     * @param score final score
+     * @param lines lines cleared
+     * @throws IOException
+     */
+    public void end(long tick, int score, int lines)
+        throws IOException
+    {
+        record(tick, Replay.END);
+        this.buffer.putInt(score);
+        this.buffer.putInt(lines);
+    }
+
+    /**
+     * Write out the buffered records.
+     * @throws IOException
+     */
+    private void flush()
+        throws IOException
+    {
+        this.buffer.flip();
+        while (this.buffer.hasRemaining())
+            this.channel.write(this.buffer);
+        this.buffer.clear();
+    }
+
+    @Override
+    public void close()
+        throws IOException
+    {
+        try {
+            flush();
+        } finally {
+            this.channel.close();
+        }
+    }
+}
@@ -0,0 +1,283 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Plays many games w/o a window, w/ a bot (see Policy) on every core,
+ * and sums them up: the spread of scores, lines and pieces per game,
+ * and how many games each thread got through. Useful for comparing
+ * heuristic weights, and for running the engine for a long time.
+ *
+ * Games are split up between the threads of a work-stealing pool,
+ * each thread w/ its own bot, and each game w/ its own engine and a
+ * seed of its own, so a game can be played again from its seed. The
+ * results go into arrays by game, so the threads share nothing else.
+ * The bot and game are configured w/ the same properties as Main,
+ * e.g. java -Djetris.weights=... -cp jetris.jar SelfPlay 1000
+ *
+ * As in Main, the bot taps the keys for each piece and the game clock
+ * is then stepped on to the next one, so gravity, lock delay and the
+ * rest of the engine's timers run as they would in a window.
+ */
+public class SelfPlay
+{
+    /*** STATIC DATA ***/
+
+    // -Djetris.randomizer, -Djetris.weights and -Djetris.beam as in Main,
+    // -Djetris.preview up to GameEngine.MAX_PREVIEW as there's no panel
+    private static final String RANDOMIZER = System.getProperty("jetris.randomizer", "7bag");
+    private static final int PREVIEW = Integer.getInteger("jetris.preview", GameEngine.PREVIEW);
+    private static final String WEIGHTS = System.getProperty("jetris.weights");
+    private static final int BEAM = Integer.getInteger("jetris.beam", 0);
+    // -Djetris.bot pieces per second of game time, as in Main
+    private static final int BOT = Integer.getInteger("jetris.bot", 10);
+    private static final int TICKS = GameEngine.TICK_RATE / Math.max(1, Math.min(BOT, GameEngine.TICK_RATE));
+
+    // games handed out per task, see Play
+    private static final int SPLIT = 1;
+
+    /*** INSTANCE VARIABLES ***/
+
+    private final Heuristic heuristic;
+    private final long seed;
+    private final long limit;
+
+    // by game, written once each by whichever thread played it
+    private final int[] scores;
+    private final int[] lines;
+    private final long[] pieces;
+    private final long[] ticks;
+    private final long[] times;
+    private final int[] threads;
+    private final String[] errors;
+
+    // one bot per thread, as they keep scratch space
+    private final ThreadLocal<Policy> bots = ThreadLocal.withInitial(this::bot);
+
+    // threads numbered from 0 in the order they first play a game,
+    // which may include the one calling run() as well as the pool's
+    private final AtomicInteger ids = new AtomicInteger();
+    private final ThreadLocal<Integer> id = ThreadLocal.withInitial(this.ids::getAndIncrement);
+
+    /*** METHODS ***/
+
+    /**
+     * Create new SelfPlay.
+     * @param h heuristic the bots play w/
+     * @param games number of games
+     * @param seed seed of the first game, the rest count up from it
+     * @param limit most pieces per game, as a good bot may never lose
+     */
+    public SelfPlay(Heuristic h, int games, long seed, long limit)
+    {
+        this.heuristic = h;
+        this.seed = seed;
+        this.limit = limit;
+        this.scores = new int[games];
+        this.lines = new int[games];
+        this.pieces = new long[games];
+        this.ticks = new long[games];
+        this.times = new long[games];
+        this.threads = new int[games];
+        this.errors = new String[games];
+    }
+
+    /**
+     * @return new bot for the calling thread
+     */
+    private Policy bot()
+    {
+        if (BEAM > 0)
+            return new BeamSearch(this.heuristic, BEAM, BeamSearch.BUDGET);
+        return new Bot(this.heuristic, null);
+    }
+
+    /**
+     * Play a game until it's over or the piece limit is reached.
+     * @param i index of the game
+     */
+    private void play(int i)
+    {
+        long t = System.nanoTime();
+        GameEngine e = new GameEngine(Randomizer.create(RANDOMIZER, this.seed + i), PREVIEW);
+        Policy bot = this.bots.get();
+        try {
+            while (!e.isGameOver() && e.getMetrics().getPieces() < this.limit)
+            {
+                Action[] actions = bot.plan(e);
+                if (actions == null)
+                    break;
+
+                // as if each key was tapped, then on to the next piece
+                for (Action a : actions)
+                {
+                    e.press(a);
+                    e.release(a);
+                }
+                e.step(TICKS);
+            }
+        } catch (RuntimeException ex) {
+            this.errors[i] = ex.toString();
+        }
+
+        this.threads[i] = this.id.get();
+        this.scores[i] = e.getScore();
+        this.lines[i] = e.getLines();
+        this.pieces[i] = e.getMetrics().getPieces();
+        this.ticks[i] = e.getElapsed();
+        this.times[i] = System.nanoTime() - t;
+    }
+
+    /**
+     * Plays a range of games, splitting it up into tasks.
+     * Tasks are never serialized.
+     */
+    @SuppressWarnings("serial")
+    private class Play
+        extends RecursiveAction
+    {
+        private final int lo;
+        private final int hi;
+
+        Play(int lo, int hi)
+        {
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (this.hi - this.lo > SPLIT) {
+                int mid = (this.lo + this.hi) >>> 1;
+                invokeAll(new Play(this.lo, mid), new Play(mid, this.hi));
+                return;
+            }
+            for (int i = this.lo; i < this.hi; i++)
+                play(i);
+        }
+    }
+
+    /**
+     * Play every game.
+     * @param pool pool to play on
+     */
+    public void run(ForkJoinPool pool)
+    {
+        pool.invoke(new Play(0, this.scores.length));
+    }
+
+    /**
+     * @param sorted values in ascending order
+     * @param p percentile, 0 to 100
+     * @return nearest ranked value
+     */
+    private static long percentile(long[] sorted, double p)
+    {
+        int i = (int) Math.ceil(p / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(i, sorted.length - 1))];
+    }
+
+    /**
+     * Print the spread of some values.
+     * @param name
+     * @param v values by game
+     */
+    private static void spread(String name, long[] v)
+    {
+        long[] s = v.clone();
+        Arrays.sort(s);
+        long sum = 0;
+        for (long x : s)
+            sum += x;
+        System.out.printf("%-7s mean %.1f, min %d, p10 %d, p50 %d, p90 %d, p99 %d, max %d%n",
+                name + ":", (double) sum / s.length, s[0], percentile(s, 10),
+                percentile(s, 50), percentile(s, 90), percentile(s, 99), s[s.length - 1]);
+    }
+
+    /**
+     * Print the results.
+     * @param nanos wall time taken by run()
+     * @param n number of threads in the pool
+     */
+    public void report(long nanos, int n)
+    {
+        int games = this.scores.length;
+        double secs = nanos / 1e9;
+        System.out.printf("%d games, %d threads, %.2f s, %.1f games/s%n",
+                games, n, secs, games / secs);
+
+        long[] score = new long[games];
+        long[] line = new long[games];
+        long total = 0;
+        long clock = 0;
+        int failed = 0;
+        for (int i = 0; i < games; i++)
+        {
+            score[i] = this.scores[i];
+            line[i] = this.lines[i];
+            total += this.pieces[i];
+            clock += this.ticks[i];
+            if (this.errors[i] != null) {
+                failed++;
+                System.out.printf("game %d (seed %d) failed: %s%n",
+                        i, this.seed + i, this.errors[i]);
+            }
+        }
+        spread("score", score);
+        spread("lines", line);
+        spread("pieces", this.pieces);
+        System.out.printf("%d pieces, %.0f pieces/s, %.0f s of game time, %d failed%n",
+                total, total / secs, (double) clock / GameEngine.TICK_RATE, failed);
+
+        // what each thread got through while it was playing
+        int m = this.ids.get();
+        long[] g = new long[m];
+        long[] p = new long[m];
+        long[] t = new long[m];
+        for (int i = 0; i < games; i++)
+        {
+            int th = this.threads[i];
+            g[th]++;
+            p[th] += this.pieces[i];
+            t[th] += this.times[i];
+        }
+        for (int i = 0; i < m; i++)
+        {
+            double busy = Math.max(1, t[i]) / 1e9;
+            System.out.printf("thread %d: %d games, %d pieces, %.1f games/s, %.0f pieces/s%n",
+                    i, g[i], p[i], g[i] / busy, p[i] / busy);
+        }
+    }
+
+    /**
+     * Play games and print how they went, e.g.
+     * java -cp jetris.jar SelfPlay 1000 [threads] [pieces]
+     * @param args number of games, threads (all cores by default)
+     *        and most pieces per game (10000 by default)
+     */
+    public static void main(String[] args)
+    {
+        if (args.length < 1) {
+            System.err.println("Usage: SelfPlay <games> [threads] [pieces]");
+            System.exit(2);
+        }
+
+        int games = Integer.parseInt(args[0]);
+        int n = args.length > 1 ? Integer.parseInt(args[1])
+            : Runtime.getRuntime().availableProcessors();
+        long limit = args.length > 2 ? Long.parseLong(args[2]) : 10000;
+        long seed = Long.getLong("jetris.seed", System.nanoTime());
+        Heuristic h = WEIGHTS == null ? Heuristic.DEFAULT : Heuristic.parse(WEIGHTS);
+
+        System.out.printf("seed %d%n", seed);
+        SelfPlay s = new SelfPlay(h, games, seed, limit);
+        ForkJoinPool pool = new ForkJoinPool(n);
+        long t = System.nanoTime();
+        s.run(pool);
+        long nanos = System.nanoTime() - t;
+        pool.shutdown();
+        s.report(nanos, n);
+    }
+}
@@ -0,0 +1,237 @@
+/**
+ * A copy of everything needed to draw the game, taken by the
+ * simulation thread and handed to the render thread (see Handoff).
+ */
+public class Snapshot
+{
+    /*** INSTANCE VARIABLES ***/
+
+    private final Grid grid = new Grid();
+    private final Kind[] preview = new Kind[GameEngine.MAX_PREVIEW];
+    private int previews = 0;
+    private Kind kind = Kind.NONE;
+    private int x = 0;
+    private int y = 0;
+    private int state = 0;
+    private Kind hold = Kind.NONE;
+
+    private int score = 0;
+    private int lines = 0;
+    private int level = 1;
+    private long elapsed = 0;
+    private double pps = 0;
+    private double apm = 0;
+    private double kpp = 0;
+    private double lpm = 0;
+    private double finesse = 0;
+
+    private boolean paused = false;
+    private boolean gameover = false;
+
+    // when the last key press applied was queued, see Main
+    private long input = 0;
+
+    /*** METHODS ***/
+
+    /**
+     * Overwrite this snapshot w/ the current state of a game.
+     * @param e
+     */
+    public void capture(GameEngine e)
+    {
+        Piece p = e.getPiece();
+        this.grid.copy(e.getGrid());
+        this.kind = p.getKind();
+        this.x = p.getX();
+        this.y = p.getY();
+        this.state = p.getState();
+        this.hold = e.getHold();
+        this.previews = e.getPreviewLength();
+        for (int i = 0; i < this.previews; i++)
+            this.preview[i] = e.getPreview(i);
+
+        this.score = e.getScore();
+        this.lines = e.getLines();
+        this.level = e.getLevel();
+        this.elapsed = e.getElapsed();
+        Metrics m = e.getMetrics();
+        this.pps = m.getRecentPps();
+        this.apm = m.getRecentApm();
+        this.kpp = m.getRecentKpp();
+        this.lpm = m.getRecentLpm();
+        this.finesse = m.getRecentFinesse();
+        this.paused = e.isPaused();
+        this.gameover = e.isGameOver();
+    }
+
+    /**
+     * @return the playfield
+     */
+    public Grid getGrid()
+    {
+        return this.grid;
+    }
+
+    /**
+     * @return kind of the falling piece
+     */
+    public Kind getKind()
+    {
+        return this.kind;
+    }
+
+    /**
+     * @return horizontal offset of the falling piece
+     */
+    public int getX()
+    {
+        return this.x;
+    }
+
+    /**
+     * @return vertical offset of the falling piece
+     */
+    public int getY()
+    {
+        return this.y;
+    }
+
+    /**
+     * @return rotation state of the falling piece
+     */
+    public int getState()
+    {
+        return this.state;
+    }
+
+    /**
+     * @return the held kind, NONE if empty
+     */
+    public Kind getHold()
+    {
+        return this.hold;
+    }
+
+    /**
+     * @param i index, 0 being the next piece
+     * @return upcoming kind
+     */
+    public Kind getPreview(int i)
+    {
+        return this.preview[i];
+    }
+
+    /**
+     * @return number of upcoming pieces captured
+     */
+    public int getPreviewLength()
+    {
+        return this.previews;
+    }
+
+    /**
+     * @return the player score
+     */
+    public int getScore()
+    {
+        return this.score;
+    }
+
+    /**
+     * @return number of lines cleared
+     */
+    public int getLines()
+    {
+        return this.lines;
+    }
+
+    /**
+     * @return current level
+     */
+    public int getLevel()
+    {
+        return this.level;
+    }
+
+    /**
+     * @return ticks played, excluding pauses
+     */
+    public long getElapsed()
+    {
+        return this.elapsed;
+    }
+
+    /**
+     * @return pieces per second, see Metrics
+     */
+    public double getPps()
+    {
+        return this.pps;
+    }
+
+    /**
+     * @return inputs per minute, see Metrics
+     */
+    public double getApm()
+    {
+        return this.apm;
+    }
+
+    /**
+     * @return inputs per piece, see Metrics
+     */
+    public double getKpp()
+    {
+        return this.kpp;
+    }
+
+    /**
+     * @return lines per minute, see Metrics
+     */
+    public double getLpm()
+    {
+        return this.lpm;
+    }
+
+    /**
+     * @return share of pieces placed w/ finesse, see Metrics
+     */
+    public double getFinesse()
+    {
+        return this.finesse;
+    }
+
+    /**
+     * @return true if paused
+     */
+    public boolean isPaused()
+    {
+        return this.paused;
+    }
+
+    /**
+     * @return true if the game is over
+     */
+    public boolean isGameOver()
+    {
+        return this.gameover;
+    }
+
+    /**
+     * @return System.nanoTime() when the last key press applied
+     *         was queued, 0 if there hasn't been one
+     */
+    public long getInput()
+    {
+        return this.input;
+    }
+
+    /**
+     * @param t System.nanoTime() when the last key
+     *        press applied was queued
+     */
+    public void setInput(long t)
+    {
+        this.input = t;
+    }
+}
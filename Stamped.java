@@ -0,0 +1,42 @@
+import java.awt.AWTEvent;
+
+/**
+ * An event on its way from the event dispatch thread to the simulation
+ * thread, w/ the time it was queued, so the time it takes to be applied
+ * and shown can be measured.
+ */
+public class Stamped
+{
+    /*** INSTANCE VARIABLES ***/
+
+    private final AWTEvent event;
+    private final long time;
+
+    /*** METHODS ***/
+
+    /**
+     * Create new Stamped, at the current time.
+     * @param e event
+     */
+    public Stamped(AWTEvent e)
+    {
+        this.event = e;
+        this.time = System.nanoTime();
+    }
+
+    /**
+     * @return the event
+     */
+    public AWTEvent getEvent()
+    {
+        return this.event;
+    }
+
+    /**
+     * @return System.nanoTime() when it was queued
+     */
+    public long getTime()
+    {
+        return this.time;
+    }
+}
@@ -0,0 +1,222 @@
+import java.util.Arrays;
+
+/**
+ * Fixed size cache of evaluated positions, keyed by the hash of the
+ * board (see Grid.getHash()) along w/ the falling and held pieces and
+ * how many pieces have been placed, so a position reached again, by
+ * another order of moves or by the next search, is found again.
+ *
+ * Keys and values are kept in parallel primitive arrays, two slots
+ * per bucket, so the memory used is set up front however long it
+ * runs. When both slots of a bucket are taken, the one written in an
+ * older generation (see age()) is replaced, the second one on a tie.
+ * Keys are 64 bit hashes, so different positions could collide,
+ * which is unlikely enough for searching.
+ */
+public class TranspositionTable
+{
+    /*** STATIC DATA ***/
+
+    // keys of the falling and held kinds, mixed into the board hash
+    private static final long[] PIECE = new long[8];
+    private static final long[] HOLD = new long[8];
+
+    static
+    {
+        for (int i = 0; i < 8; i++)
+        {
+            PIECE[i] = mix(0x5049454345L + i);
+            HOLD[i] = mix(0x484F4C44L + i);
+        }
+    }
+
+    /*** INSTANCE VARIABLES ***/
+
+    private final long[] keys;
+    private final double[] values;
+    // generation each slot was written in, 0 if it's empty
+    private final int[] ages;
+    private final int mask;
+    private int age = 1;
+    private int size = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    /*** METHODS ***/
+
+    /**
+     * Scramble the bits of a number (the SplitMix64 finalizer).
+     * @param z
+     * @return mixed number
+     */
+    public static long mix(long z)
+    {
+        z += 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Combine the parts of a position into a key.
+     * @param board hash of the board
+     * @param piece falling kind
+     * @param hold held kind
+     * @param placed number of pieces placed since the game began, which
+     *        along w/ the held kind says how far into the queue it is
+     * @return key
+     */
+    public static long key(long board, Kind piece, Kind hold, long placed)
+    {
+        return board ^ PIECE[piece.ordinal()] ^ HOLD[hold.ordinal()] ^ mix(placed);
+    }
+
+    /**
+     * Create new TranspositionTable.
+     * @param bits log2 of the number of entries, at least 1
+     */
+    public TranspositionTable(int bits)
+    {
+        int n = 1 << Math.max(1, Math.min(bits, 28));
+        this.keys = new long[n];
+        this.values = new double[n];
+        this.ages = new int[n];
+        this.mask = n - 1;
+    }
+
+    /**
+     * Look up a position.
+     * @param key see key()
+     * @return slot holding it (see value()), -1 if it's not in the table
+     */
+    public int probe(long key)
+    {
+        int i = (int) key & this.mask & ~1;
+        for (int j = i; j < i + 2; j++)
+        {
+            if (this.ages[j] != 0 && this.keys[j] == key) {
+                this.hits++;
+                return j;
+            }
+        }
+        this.misses++;
+        return -1;
+    }
+
+    /**
+     * @param slot slot found by probe(), until the next put()
+     * @return value stored in it
+     */
+    public double value(int slot)
+    {
+        return this.values[slot];
+    }
+
+    /**
+     * Look up a position, for callers which never store NaN.
+     * @param key see key()
+     * @return stored value, NaN if it's not in the table
+     */
+    public double get(long key)
+    {
+        int slot = probe(key);
+        return slot < 0 ? Double.NaN : this.values[slot];
+    }
+
+    /**
+     * Store a position, replacing its previous value if any.
+     * @param key see key()
+     * @param value
+     */
+    public void put(long key, double value)
+    {
+        int i = (int) key & this.mask & ~1;
+        int slot = -1;
+        for (int j = i; j < i + 2; j++)
+        {
+            if (this.ages[j] != 0 && this.keys[j] == key) {
+                slot = j;
+                break;
+            }
+            if (this.ages[j] == 0 && slot < 0)
+                slot = j;
+        }
+
+        if (slot < 0) {
+            slot = this.ages[i] < this.ages[i + 1] ? i : i + 1;
+            this.evictions++;
+        } else if (this.ages[slot] == 0) {
+            this.size++;
+        }
+        this.keys[slot] = key;
+        this.values[slot] = value;
+        this.ages[slot] = this.age;
+    }
+
+    /**
+     * Start a new generation, entries written before
+     * are replaced first when a bucket is full.
+     */
+    public void age()
+    {
+        if (++this.age == Integer.MAX_VALUE) {
+            // start over rather than wrap around
+            for (int i = 0; i < this.ages.length; i++)
+                if (this.ages[i] != 0)
+                    this.ages[i] = 1;
+            this.age = 2;
+        }
+    }
+
+    /**
+     * Remove every entry, the counters are left as they are.
+     */
+    public void clear()
+    {
+        Arrays.fill(this.ages, 0);
+        this.size = 0;
+        this.age = 1;
+    }
+
+    /**
+     * @return number of entries stored
+     */
+    public int getSize()
+    {
+        return this.size;
+    }
+
+    /**
+     * @return number of entries which fit
+     */
+    public int getCapacity()
+    {
+        return this.keys.length;
+    }
+
+    /**
+     * @return number of lookups which found their position
+     */
+    public long getHits()
+    {
+        return this.hits;
+    }
+
+    /**
+     * @return number of lookups which didn't
+     */
+    public long getMisses()
+    {
+        return this.misses;
+    }
+
+    /**
+     * @return number of entries replaced by another position
+     */
+    public long getEvictions()
+    {
+        return this.evictions;
+    }
+}
@@ -0,0 +1,141 @@
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Scores boards w/ the Vector API, one board per lane, walking down
+ * the rows of all of them at once the same way Heuristic does one.
+ *
+ * There's no lanewise bit count before JDK 19, so each row's masks are
+ * counted w/ the first steps of a SWAR bit count, leaving a count per
+ * byte, and those are summed over the rows. A byte counts at most 8
+ * locations per row, 176 over 22 rows, so it never overflows. Two
+ * masks are packed into each lane, at bits 0 and 16, and counted at
+ * once, their bytes are only added up at the end.
+ *
+ * Needs --add-modules jdk.incubator.vector to compile and to run, so
+ * it's only ever loaded by name, see Heuristic.
+ */
+public class VectorHeuristic
+    implements Heuristic.Batch
+{
+    /*** STATIC DATA ***/
+
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+    private static final int LANES = INTS.length();
+
+    // boards transposed so each row loads at once (gathers aren't
+    // intrinsified on JDK 17), followed by the features of each
+    private static final ThreadLocal<int[]> SCRATCH =
+        ThreadLocal.withInitial(() -> new int[(Heuristic.ROWS + 5) * LANES]);
+
+    /*** METHODS ***/
+
+    /**
+     * Count the features of a group of boards, one per lane.
+     *
+     * The bit counts are written out rather than calling a method for
+     * each, as C2 stops inlining calls in a method this big, while the
+     * Vector API's own methods are always inlined. Vectors only stay
+     * in registers if everything is.
+     *
+     * @param t transposed rows, see SCRATCH, the features
+     *        are written after them
+     */
+    private static void features(int[] t)
+    {
+        IntVector seen = IntVector.zero(INTS);
+        IntVector a = IntVector.zero(INTS);
+        IntVector b = IntVector.zero(INTS);
+        IntVector c = IntVector.zero(INTS);
+        for (int y = Heuristic.ROWS - 1; y >= 0; y--)
+        {
+            IntVector r = IntVector.fromArray(INTS, t, y * LANES);
+            seen = seen.or(r);
+
+            // column heights and holes
+            IntVector u = seen.or(seen.and(r.not()).lanewise(VectorOperators.LSHL, 16));
+
+            // bumpiness and wells, walls on either side
+            IntVector w = r.lanewise(VectorOperators.LSHL, 1).or(0x801);
+            IntVector bump = seen.lanewise(VectorOperators.XOR,
+                    seen.lanewise(VectorOperators.LSHR, 1)).and(Grid.FULL >>> 1);
+            IntVector well = w.lanewise(VectorOperators.LSHR, 2).and(w)
+                    .and(seen.not()).and(Grid.FULL);
+            IntVector v = bump.or(well.lanewise(VectorOperators.LSHL, 16));
+
+            // row transitions, up to the top of the stack
+            IntVector x = w.lanewise(VectorOperators.XOR,
+                    w.lanewise(VectorOperators.LSHR, 1)).and(0x7FF);
+            x = x.blend(0, seen.compare(VectorOperators.EQ, 0));
+
+            // SWAR bit counts of each byte
+            u = u.sub(u.lanewise(VectorOperators.LSHR, 1).and(0x55555555));
+            v = v.sub(v.lanewise(VectorOperators.LSHR, 1).and(0x55555555));
+            x = x.sub(x.lanewise(VectorOperators.LSHR, 1).and(0x55555555));
+            u = u.and(0x33333333).add(u.lanewise(VectorOperators.LSHR, 2).and(0x33333333));
+            v = v.and(0x33333333).add(v.lanewise(VectorOperators.LSHR, 2).and(0x33333333));
+            x = x.and(0x33333333).add(x.lanewise(VectorOperators.LSHR, 2).and(0x33333333));
+            a = a.add(u.add(u.lanewise(VectorOperators.LSHR, 4)).and(0x0F0F0F0F));
+            b = b.add(v.add(v.lanewise(VectorOperators.LSHR, 4)).and(0x0F0F0F0F));
+            c = c.add(x.add(x.lanewise(VectorOperators.LSHR, 4)).and(0x0F0F0F0F));
+        }
+
+        // add up the bytes of each count
+        a = a.and(0x00FF00FF).add(a.lanewise(VectorOperators.LSHR, 8).and(0x00FF00FF));
+        b = b.and(0x00FF00FF).add(b.lanewise(VectorOperators.LSHR, 8).and(0x00FF00FF));
+        c = c.and(0x00FF00FF).add(c.lanewise(VectorOperators.LSHR, 8).and(0x00FF00FF));
+
+        int f = Heuristic.ROWS * LANES;
+        a.and(0xFFFF).intoArray(t, f);
+        a.lanewise(VectorOperators.LSHR, 16).intoArray(t, f + LANES);
+        b.and(0xFFFF).intoArray(t, f + 2 * LANES);
+        b.lanewise(VectorOperators.LSHR, 16).intoArray(t, f + 3 * LANES);
+        c.intoArray(t, f + 4 * LANES);
+    }
+
+    /**
+     * Create new VectorHeuristic.
+     * @throws UnsupportedOperationException if vectors are
+     *         too narrow to be worth it, less than 256 bits
+     */
+    public VectorHeuristic()
+    {
+        if (LANES < 8)
+            throw new UnsupportedOperationException
+                ("Only " + LANES + " int lanes");
+    }
+
+    @Override
+    public void evaluate(Heuristic h, int[] rows, int[] lines,
+            double[] scores, int from, int to)
+    {
+        int[] t = SCRATCH.get();
+        int i = from;
+        for (; i + LANES <= to; i += LANES)
+        {
+            // row 'y' of each board next to each other
+            for (int l = 0; l < LANES; l++)
+            {
+                int b = (i + l) * Heuristic.ROWS;
+                for (int y = 0; y < Heuristic.ROWS; y++)
+                    t[y * LANES + l] = rows[b + y];
+            }
+
+            features(t);
+            int f = Heuristic.ROWS * LANES;
+
+            // same order of operations as Heuristic, for the same result
+            for (int l = 0; l < LANES; l++)
+            {
+                int n = lines == null ? 0 : lines[i + l];
+                scores[i + l] = h.getHeight() * t[f + l] + h.getLines() * n
+                    + h.getHoles() * t[f + LANES + l] + h.getBumpiness() * t[f + 2 * LANES + l]
+                    + h.getTransitions() * t[f + 4 * LANES + l] + h.getWells() * t[f + 3 * LANES + l];
+            }
+        }
+
+        for (; i < to; i++)
+            scores[i] = h.evaluate(rows, i * Heuristic.ROWS, lines == null ? 0 : lines[i]);
+    }
+}
@@ -0,0 +1,69 @@
+package jetris;
+
+import java.util.Arrays;
+
+/**
+ * The original 'int[22][10]' grid, kept as a baseline
+ * for comparing against the bitboard in Grid.
+ */
+public class ArrayGrid
+{
+    private int[][] grid = new int[22][10];
+    private int[] rows = new int[22];
+
+    /**
+     * Overwrite this grid w/ the contents of another.
+     * @param g
+     */
+    public void copy(Grid g)
+    {
+        for (int y = 0; y < 22; y++)
+        {
+            rows[y] = 0;
+            for (int x = 0; x < 10; x++)
+            {
+                grid[y][x] = g.get(x, y) ? 1 : 0;
+                rows[y] += grid[y][x];
+            }
+        }
+    }
+
+    /**
+     * Overwrite this grid w/ the contents of another.
+     * @param other
+     */
+    public void copy(ArrayGrid other)
+    {
+        for (int y = 0; y < 22; y++)
+        {
+            System.arraycopy(other.grid[y], 0, grid[y], 0, 10);
+            rows[y] = other.rows[y];
+        }
+    }
+
+    /**
+     * @return number of lines cleared
+     */
+    public int clear()
+    {
+        int n = 0;
+        for (int i = 0; i < 22; i++)
+        {
+            if (rows[i] == 10) {
+                n++;
+                for (int j = i; j < 22; j++)
+                {
+                    if (j < 21) {
+                        rows[j] = rows[j+1];
+                        grid[j] = Arrays.copyOf(grid[j+1], 10);
+                    } else {
+                        rows[j] = 0;
+                        Arrays.fill(grid[j], 0);
+                    }
+                }
+            }
+        }
+
+        return n;
+    }
+}
@@ -0,0 +1,37 @@
+package jetris;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Whole-engine throughput. Each operation hard drops one piece, which
+ * covers placement, line clears and generating the next piece from the
+ * bag; a new game starts whenever one ends.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EngineBench
+{
+    private long seed = 0;
+    private GameEngine engine;
+
+    @Setup
+    public void setup()
+    {
+        this.engine = new GameEngine(this.seed++);
+    }
+
+    @Benchmark
+    public int hardDrop()
+    {
+        if (this.engine.isGameOver())
+            this.engine = new GameEngine(this.seed++);
+        this.engine.input(Action.HARD_DROP);
+        return this.engine.getScore();
+    }
+}
@@ -0,0 +1,35 @@
+package jetris;
+
+import java.util.Random;
+
+/**
+ * Deterministic playfields for the benchmarks.
+ */
+public final class Fields
+{
+    private Fields() {}
+
+    /**
+     * Build a garbage stack.
+     * @param seed
+     * @param height number of rows filled from the bottom
+     * @param full number of those rows which are complete,
+     *        spread evenly through the stack
+     * @return new grid
+     */
+    public static Grid stack(long seed, int height, int full)
+    {
+        Random r = new Random(seed);
+        Grid g = new Grid();
+        for (int y = 0; y < height; y++)
+        {
+            boolean complete = full > 0 && y % Math.max(1, height / full) == 0
+                && y / Math.max(1, height / full) < full;
+            int hole = r.nextInt(10);
+            for (int x = 0; x < 10; x++)
+                if (complete || (x != hole && r.nextInt(4) != 0))
+                    g.set(x, y, Kind.values()[1 + r.nextInt(7)]);
+        }
+        return g;
+    }
+}
@@ -0,0 +1,66 @@
+package jetris;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Line clears at varying fill levels. Each operation restores the
+ * field from a template first, the copy benchmarks measure that cost
+ * on its own so it can be subtracted.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GridBench
+{
+    @Param({"4", "10", "18"})
+    public int height;
+
+    @Param({"0", "1", "4"})
+    public int full;
+
+    private Grid template;
+    private Grid grid = new Grid();
+
+    private ArrayGrid arrayTemplate = new ArrayGrid();
+    private ArrayGrid array = new ArrayGrid();
+
+    @Setup
+    public void setup()
+    {
+        this.template = Fields.stack(42, this.height, this.full);
+        this.arrayTemplate.copy(this.template);
+    }
+
+    @Benchmark
+    public Grid copy()
+    {
+        this.grid.copy(this.template);
+        return this.grid;
+    }
+
+    @Benchmark
+    public int clear()
+    {
+        this.grid.copy(this.template);
+        return this.grid.clear();
+    }
+
+    @Benchmark
+    public ArrayGrid arrayCopy()
+    {
+        this.array.copy(this.arrayTemplate);
+        return this.array;
+    }
+
+    @Benchmark
+    public int arrayClear()
+    {
+        this.array.copy(this.arrayTemplate);
+        return this.array.clear();
+    }
+}
@@ -0,0 +1,82 @@
+package jetris;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Board evaluation, one board at a time against the Vector API batch
+ * (see VectorHeuristic), over boards of every height. Each operation
+ * is one board. The two must give the same scores, which is checked
+ * before measuring.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector" })
+@State(Scope.Thread)
+public class HeuristicBench
+{
+    private static final int BOARDS = 1024;
+
+    private final Heuristic heuristic = new Heuristic(
+            -0.510066, 0.760666, -0.35663, -0.184483, -0.1, -0.1);
+    private final VectorHeuristic vector = new VectorHeuristic();
+
+    private int[] rows = new int[BOARDS * Heuristic.ROWS];
+    private int[] lines = new int[BOARDS];
+    private double[] scores = new double[BOARDS];
+
+    @Setup
+    public void setup()
+    {
+        for (int i = 0; i < BOARDS; i++)
+        {
+            Grid g = Fields.stack(i, i % (Heuristic.ROWS + 1), i % 3);
+            for (int y = 0; y < Heuristic.ROWS; y++)
+                this.rows[i * Heuristic.ROWS + y] = g.row(y);
+            this.lines[i] = i % 5;
+        }
+        verify(this.lines);
+        verify(null);
+    }
+
+    /**
+     * Check that both ways score every board the same, to the bit.
+     * The batch leaves a board out at either end, so that the boards
+     * which don't fill a vector are scored too.
+     * @param lines lines cleared getting to each board, or null
+     * @throws IllegalStateException at the first board that differs
+     */
+    private void verify(int[] lines)
+    {
+        double[] batch = new double[BOARDS];
+        this.vector.evaluate(this.heuristic, this.rows, lines, batch, 1, BOARDS - 1);
+        for (int i = 1; i < BOARDS - 1; i++)
+        {
+            double s = this.heuristic.evaluate(this.rows, i * Heuristic.ROWS,
+                    lines == null ? 0 : lines[i]);
+            if (Double.compare(s, batch[i]) != 0)
+                throw new IllegalStateException("Board " + i + " scored "
+                        + batch[i] + " in a batch, " + s + " alone");
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BOARDS)
+    public double[] scalar()
+    {
+        for (int i = 0; i < BOARDS; i++)
+            this.scores[i] = this.heuristic.evaluate(this.rows, i * Heuristic.ROWS, this.lines[i]);
+        return this.scores;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BOARDS)
+    public double[] vector()
+    {
+        this.vector.evaluate(this.heuristic, this.rows, this.lines, this.scores, 0, BOARDS);
+        return this.scores;
+    }
+}
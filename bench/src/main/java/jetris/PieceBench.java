@@ -0,0 +1,78 @@
+package jetris;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Collision tests, rotations and drop distance of
+ * a piece hovering over a garbage stack.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PieceBench
+{
+    @Param({"I", "T", "S"})
+    public Kind kind;
+
+    @Param({"6", "14"})
+    public int height;
+
+    private Piece piece;
+    private Piece wall;
+
+    @Setup
+    public void setup()
+    {
+        Grid g = Fields.stack(42, this.height, 0);
+        this.piece = new Piece(this.kind, g);
+        this.piece.setPosition(3, this.height, 0);
+
+        // vertical against the left wall, so rotating needs a kick
+        this.wall = new Piece(this.kind, g);
+        this.wall.setPosition(3, this.height, 1);
+        while (this.wall.move(Direction.LEFT));
+    }
+
+    @Benchmark
+    public boolean collides()
+    {
+        return this.piece.collides();
+    }
+
+    @Benchmark
+    public boolean rotate()
+    {
+        boolean b = this.piece.rotate(Direction.RIGHT);
+        this.piece.setPosition(3, this.height, 0);
+        return b;
+    }
+
+    @Benchmark
+    public boolean rotateKick()
+    {
+        int x = this.wall.getX();
+        int y = this.wall.getY();
+        boolean b = this.wall.rotate(Direction.LEFT);
+        this.wall.setPosition(x, y, 1);
+        return b;
+    }
+
+    @Benchmark
+    public int distance()
+    {
+        return this.piece.distance();
+    }
+
+    @Benchmark
+    public int drop()
+    {
+        int d = this.piece.drop();
+        this.piece.setPosition(3, this.height, 0);
+        return d;
+    }
+}
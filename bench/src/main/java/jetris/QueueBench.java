@@ -0,0 +1,44 @@
+package jetris;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Piece generation. Each operation takes one piece off the queue,
+ * for every randomizer; with -prof gc this should show no allocation.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class QueueBench
+{
+    @Param({ "7bag", "14bag", "classic", "random" })
+    public String randomizer;
+
+    private PieceQueue queue;
+
+    @Setup
+    public void setup()
+    {
+        this.queue = new PieceQueue(Randomizer.create(this.randomizer, 0), 5);
+    }
+
+    @Benchmark
+    public Kind next()
+    {
+        return this.queue.next();
+    }
+
+    @Benchmark
+    public Kind hold()
+    {
+        // swap w/ hold, then take the held piece back out
+        Kind k = this.queue.next();
+        this.queue.push(k);
+        return this.queue.next();
+    }
+}